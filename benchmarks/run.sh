@@ -0,0 +1,16 @@
+#!/bin/sh
+# Compiles the library and the benchmarks against the jars in lib/ and runs the benchmarks with the GC profiler.
+# The JMH jars are taken from the local Maven repository, or from $JMH_CLASSPATH if it is set.
+# Any arguments are passed to JMH, e.g. `./run.sh SchemeBenchmark -p messageLength=160,256`.
+set -e
+
+cd "$(dirname "$0")/.."
+M2="${MAVEN_REPOSITORY:-$HOME/.m2/repository}"
+JMH_CLASSPATH="${JMH_CLASSPATH:-$M2/org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar:$M2/org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar:$M2/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar:$M2/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar}"
+CLASSPATH="lib/jpbc-api-2.0.0.jar:lib/jpbc-plaf-2.0.0.jar:$JMH_CLASSPATH"
+OUT=out/benchmarks
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -encoding UTF-8 -d "$OUT" -cp "$CLASSPATH" $(find src benchmarks/src -name '*.java')
+java -cp "$OUT:$CLASSPATH" org.openjdk.jmh.Main -prof gc "$@"
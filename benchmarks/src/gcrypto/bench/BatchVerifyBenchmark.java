@@ -0,0 +1,88 @@
+package gcrypto.bench;
+
+import gcrypto.Authority;
+import gcrypto.BitString;
+import gcrypto.PrivateKey;
+import gcrypto.Scheme;
+import gcrypto.SignedMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verifying a batch one by one with `VerifyBatch`. The batch contains signatures from `identities` identities
+ * on distinct messages. The scores are per batch, so dividing them by `batchSize` gives the amortized cost of a
+ * single signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class BatchVerifyBenchmark {
+    // rBits:qBits
+    @Param({ "160:512" })
+    public String curve;
+
+    @Param({ "32" })
+    public int identityLength;
+
+    @Param({ "160" })
+    public int messageLength;
+
+    @Param({ "8" })
+    public int identities;
+
+    @Param({ "1", "16", "64", "256" })
+    public int batchSize;
+
+    private Scheme scheme;
+    private List<SignedMessage> signedMessages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] bits = BenchmarkParameters.parseCurve(curve);
+        scheme = new Scheme(bits[0], bits[1], identityLength, messageLength);
+        scheme.Setup(new Authority());
+        BitString[] identityBits = new BitString[identities];
+        PrivateKey[] privateKeys = new PrivateKey[identities];
+        for(int i = 0; i < identities; i++) {
+            identityBits[i] = BenchmarkParameters.randomBits(identityLength);
+            privateKeys[i] = scheme.Extract(identityBits[i]);
+        }
+        signedMessages = new ArrayList<>();
+        for(int i = 0; i < batchSize; i++) {
+            BitString message = BenchmarkParameters.randomBits(messageLength);
+            signedMessages.add(new SignedMessage(identityBits[i % identities], message,
+                    scheme.Sign(message, privateKeys[i % identities])));
+        }
+    }
+
+    @Benchmark
+    public boolean verifyEach() {
+        boolean valid = true;
+        for(SignedMessage signedMessage : signedMessages) {
+            valid &= scheme.Verify(signedMessage.getIdentity(), signedMessage.getMessage(), signedMessage.getSignature());
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public boolean[] verifyBatch() {
+        return scheme.VerifyBatch(signedMessages);
+    }
+}
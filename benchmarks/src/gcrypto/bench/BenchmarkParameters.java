@@ -0,0 +1,24 @@
+package gcrypto.bench;
+
+import gcrypto.BitString;
+
+import java.util.Random;
+
+class BenchmarkParameters {
+    // Fixed seed, so that every run benchmarks the same identities and messages.
+    private static final Random random = new Random(42);
+
+    // Parses "rBits:qBits".
+    static int[] parseCurve(String curve) {
+        String[] parts = curve.split(":");
+        return new int[] { Integer.parseInt(parts[0]), Integer.parseInt(parts[1]) };
+    }
+
+    static BitString randomBits(int length) {
+        StringBuilder bits = new StringBuilder(length);
+        for(int i = 0; i < length; i++) {
+            bits.append(random.nextBoolean() ? '1' : '0');
+        }
+        return BitString.fromString(bits.toString());
+    }
+}
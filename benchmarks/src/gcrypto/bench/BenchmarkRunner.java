@@ -0,0 +1,20 @@
+package gcrypto.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks that match the given regular expression (all of them by default) with the GC profiler, which
+ * reports the allocation rate next to the throughput.
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = (args.length > 0) ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
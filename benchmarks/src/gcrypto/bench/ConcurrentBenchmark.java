@@ -0,0 +1,73 @@
+package gcrypto.bench;
+
+import gcrypto.Authority;
+import gcrypto.BitString;
+import gcrypto.PrivateKey;
+import gcrypto.Scheme;
+import gcrypto.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs and verifies from as many threads as there are cores, all sharing a single scheme. Compare the scores with
+ * `SchemeBenchmark`, or run with `-t 1,2,4,...` to see how the throughput scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Threads(Threads.MAX)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ConcurrentBenchmark {
+
+    // rBits:qBits
+    @Param({ "160:512" })
+    public String curve;
+
+    @Param({ "32" })
+    public int identityLength;
+
+    @Param({ "160" })
+    public int messageLength;
+
+    private Scheme scheme;
+    private BitString identity;
+    private BitString message;
+    private PrivateKey privateKey;
+    private Signature signature;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] bits = BenchmarkParameters.parseCurve(curve);
+        scheme = new Scheme(bits[0], bits[1], identityLength, messageLength);
+        scheme.Setup(new Authority());
+        identity = BenchmarkParameters.randomBits(identityLength);
+        message = BenchmarkParameters.randomBits(messageLength);
+        privateKey = scheme.Extract(identity);
+        signature = scheme.Sign(message, privateKey);
+    }
+
+    @Benchmark
+    public Signature sign() {
+        return scheme.Sign(message, privateKey);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return scheme.Verify(identity, message, signature);
+    }
+}
@@ -0,0 +1,112 @@
+package gcrypto.bench;
+
+import gcrypto.Authority;
+import gcrypto.BitString;
+import gcrypto.PrivateKey;
+import gcrypto.Signature;
+import gcrypto.threshold.DistributedKeys;
+import gcrypto.threshold.LagrangeCoefficients;
+import gcrypto.threshold.ServerSigner;
+import gcrypto.threshold.SignatureShare;
+import gcrypto.threshold.ThresholdScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ThresholdSchemeBenchmark {
+
+    // rBits:qBits
+    @Param({ "160:512" })
+    public String curve;
+
+    @Param({ "32" })
+    public int identityLength;
+
+    @Param({ "160" })
+    public int messageLength;
+
+    @Param({ "10" })
+    public int servers;
+
+    @Param({ "3" })
+    public int threshold;
+
+    private ThresholdScheme scheme;
+    private BitString identity;
+    private BitString message;
+    private PrivateKey privateKey;
+    private DistributedKeys distributedKeys;
+    private int[] quorum;
+    private SignatureShare[] signatureShares;
+    private ServerSigner serverSigner;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] bits = BenchmarkParameters.parseCurve(curve);
+        scheme = new ThresholdScheme(bits[0], bits[1], identityLength, messageLength);
+        scheme.Setup(new Authority());
+        identity = BenchmarkParameters.randomBits(identityLength);
+        message = BenchmarkParameters.randomBits(messageLength);
+        privateKey = scheme.Extract(identity);
+        distributedKeys = scheme.KeyDis(privateKey, servers, threshold, identity);
+        // The first `threshold` servers take part in the reconstruction.
+        quorum = new int[threshold];
+        signatureShares = new SignatureShare[threshold];
+        for(int i = 0; i < threshold; i++) {
+            quorum[i] = i + 1;
+            signatureShares[i] = ThresholdScheme.ThrSigIndividual(message, identity,
+                    distributedKeys.getPrivateKey(quorum[i]), scheme.getPublicParameters());
+        }
+        serverSigner = scheme.getServerSigner(1, identity, distributedKeys);
+    }
+
+    @Benchmark
+    public DistributedKeys keyDis() {
+        return scheme.KeyDis(privateKey, servers, threshold, identity);
+    }
+
+    @Benchmark
+    public SignatureShare thrSigIndividual() {
+        return ThresholdScheme.ThrSigIndividual(message, identity, distributedKeys.getPrivateKey(1),
+                scheme.getPublicParameters());
+    }
+
+    @Benchmark
+    public SignatureShare serverSigner() {
+        return serverSigner.sign(message);
+    }
+
+    @Benchmark
+    public Signature reconstruct() {
+        return ThresholdScheme.Reconstruct(quorum, signatureShares, distributedKeys.getY(), scheme.getPublicParameters());
+    }
+
+    // The coefficients of the quorum as Reconstruct gets them, i.e. from the cache after the first call.
+    @Benchmark
+    public BigInteger[] lagrangeCoefficients() {
+        return LagrangeCoefficients.get(quorum, scheme.getPublicParameters().G.getOrder());
+    }
+
+    @Benchmark
+    public BigInteger[] lagrangeCoefficientsUncached() {
+        return LagrangeCoefficients.compute(quorum, scheme.getPublicParameters().G.getOrder());
+    }
+}
@@ -0,0 +1,166 @@
+package gcrypto;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable, packed bit string that is used to represent identities and messages.
+ * Bit i corresponds to the i-th element of the U or M vector, i.e. to the i-th character of the equivalent string of
+ * `0`s and `1`s.
+ */
+public final class BitString {
+    private final long[] words;
+    private final int length;
+
+    private BitString(long[] words, int length) {
+        this.words = words;
+        this.length = length;
+    }
+
+    /**
+     * @param bits a string of `0`s and `1`s. Every character other than `1` is treated as a `0`.
+     */
+    public static BitString fromString(String bits) {
+        long[] words = new long[wordCount(bits.length())];
+        for(int i = 0; i < bits.length(); i++) {
+            if(bits.charAt(i) == '1') {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new BitString(words, bits.length());
+    }
+
+    /**
+     * @param bytes the bits, where the most significant bit of bytes[0] is the first bit.
+     * @param length the number of bits to take from the bytes.
+     */
+    public static BitString fromBytes(byte[] bytes, int length) {
+        if(length > bytes.length * 8) {
+            throw new IllegalArgumentException("Not enough bytes for " + length + " bits.");
+        }
+        long[] words = new long[wordCount(length)];
+        for(int i = 0; i < length; i++) {
+            if((bytes[i >>> 3] & (0x80 >>> (i & 7))) != 0) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new BitString(words, length);
+    }
+
+    /**
+     * @param words the bits, where bit i is (words[i / 64] >>> (i % 64)) & 1, like in `BitSet.toLongArray`.
+     * @param length the number of bits to take from the words.
+     */
+    public static BitString fromLongs(long[] words, int length) {
+        if(length > words.length * 64) {
+            throw new IllegalArgumentException("Not enough words for " + length + " bits.");
+        }
+        long[] copy = Arrays.copyOf(words, wordCount(length));
+        if((length & 63) != 0) {
+            // Clear the bits beyond the length.
+            copy[copy.length - 1] &= (1L << length) - 1;
+        }
+        return new BitString(copy, length);
+    }
+
+    /**
+     * @param bits the set bits.
+     * @param length the number of bits, as `BitSet` does not keep track of trailing zeros.
+     */
+    public static BitString fromBitSet(BitSet bits, int length) {
+        return fromLongs(Arrays.copyOf(bits.toLongArray(), wordCount(length)), length);
+    }
+
+    /**
+     * Hashes an arbitrary-length message to the given number of bits with SHA-256 in counter mode, i.e. the bits are
+     * taken from SHA-256(0 || message) || SHA-256(1 || message) || ...
+     */
+    public static BitString hash(byte[] message, int length) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        int blockLength = digest.getDigestLength();
+        byte[] bytes = new byte[((length + 7) / 8 + blockLength - 1) / blockLength * blockLength];
+        for(int counter = 0; counter * blockLength < bytes.length; counter++) {
+            digest.update(ByteBuffer.allocate(4).putInt(counter).array());
+            digest.update(message);
+            System.arraycopy(digest.digest(), 0, bytes, counter * blockLength, blockLength);
+        }
+        return fromBytes(bytes, length);
+    }
+
+    private static int wordCount(int length) {
+        return (length + 63) >>> 6;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Returns the bits in [start, start + size) as an integer, where bit j of the result is bit start + j.
+     * @param size at most 32.
+     */
+    public int window(int start, int size) {
+        int word = start >>> 6;
+        int offset = start & 63;
+        long bits = words[word] >>> offset;
+        if(offset + size > 64 && word + 1 < words.length) {
+            bits |= words[word + 1] << (64 - offset);
+        }
+        return (int) (bits & ((1L << size) - 1));
+    }
+
+    /**
+     * @return the words of the bit string. The returned array must not be modified.
+     */
+    long[] words() {
+        return words;
+    }
+
+    public long[] toLongArray() {
+        return words.clone();
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[(length + 7) / 8];
+        for(int i = 0; i < length; i++) {
+            if(get(i)) {
+                bytes[i >>> 3] |= 0x80 >>> (i & 7);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof BitString)) return false;
+        BitString other = (BitString) o;
+        return length == other.length && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(words) + length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(length);
+        for(int i = 0; i < length; i++) {
+            builder.append(get(i) ? '1' : '0');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,541 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingParameters;
+import it.unisa.dia.gas.plaf.jpbc.field.curve.CurveElement;
+import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
+import it.unisa.dia.gas.plaf.jpbc.pairing.parameters.PropertiesParameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary encoding for the public parameters, private keys and signatures.
+ * Every encoding starts with a header of three bytes: the version of the encoding, the type of the encoded object
+ * and a flags byte. The header is followed by the fixed-length encodings of the elements (`Element.toBytes`) and the
+ * integers (big-endian, as long as the group order), so apart from the public parameters no lengths are stored.
+ * Reading from a heap buffer decodes the elements directly from its backing array, without copying.
+ * If the `COMPRESSED` flag is set, the elements of G are written as their x-coordinate and the sign of y, which is
+ * about half of the length. Decompressing takes a square root, so the decoders of signatures can be given a
+ * `PointCache` of decompressed points.
+ */
+public final class Codec {
+    public static final byte VERSION = 1;
+
+    public static final byte PUBLIC_PARAMETERS = 1;
+    public static final byte PRIVATE_KEY = 2;
+    public static final byte SIGNATURE = 3;
+    public static final byte SIGNATURE_SHARE = 4;
+    public static final byte DISTRIBUTED_KEYS = 5;
+
+    public static final int HEADER_LENGTH = 3;
+
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+
+    // Flags.
+    public static final byte COMPRESSED = 1;
+
+    private Codec() {
+    }
+
+    // *** Public parameters ***
+
+    /**
+     * The encoding includes the parameters of the pairing, so the public parameters can be decoded on their own.
+     * @param publicParameters public parameters that know their pairing, e.g. the ones returned by `Setup`.
+     */
+    public static byte[] encode(PublicParameters publicParameters) {
+        return encode(publicParameters, false);
+    }
+
+    public static byte[] encode(PublicParameters publicParameters, boolean compressed) {
+        byte[] pairingParameters = encodePairingParameters(publicParameters);
+        int length = HEADER_LENGTH + 4 + pairingParameters.length + 8
+                + (5 + publicParameters.U.length + publicParameters.M.length) * pointLength(publicParameters.g, compressed);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        write(buffer, publicParameters, pairingParameters, compressed);
+        return buffer.array();
+    }
+
+    public static void write(ByteBuffer buffer, PublicParameters publicParameters) {
+        write(buffer, publicParameters, false);
+    }
+
+    public static void write(ByteBuffer buffer, PublicParameters publicParameters, boolean compressed) {
+        write(buffer, publicParameters, encodePairingParameters(publicParameters), compressed);
+    }
+
+    private static void write(ByteBuffer buffer, PublicParameters publicParameters, byte[] pairingParameters,
+                              boolean compressed) {
+        writeHeader(buffer, PUBLIC_PARAMETERS, flags(compressed));
+        buffer.putInt(pairingParameters.length);
+        buffer.put(pairingParameters);
+        buffer.putInt(publicParameters.U.length);
+        buffer.putInt(publicParameters.M.length);
+        writePoint(buffer, publicParameters.g, compressed);
+        writePoint(buffer, publicParameters.g1, compressed);
+        writePoint(buffer, publicParameters.g2, compressed);
+        writePoint(buffer, publicParameters.uPrime, compressed);
+        writePoint(buffer, publicParameters.mPrime, compressed);
+        for(Element u : publicParameters.U) {
+            writePoint(buffer, u, compressed);
+        }
+        for(Element m : publicParameters.M) {
+            writePoint(buffer, m, compressed);
+        }
+    }
+
+    /**
+     * The public parameters are expected to come from a trusted source, so their points are only checked to be on the
+     * curve, and not to be in the group of order r.
+     */
+    public static PublicParameters decodePublicParameters(byte[] bytes) {
+        return readPublicParameters(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * @param validate whether every point is checked to be in the group of order r, for parameters from an untrusted
+     *                 source. It takes an exponentiation per point.
+     */
+    public static PublicParameters decodePublicParameters(byte[] bytes, boolean validate) {
+        return readPublicParameters(ByteBuffer.wrap(bytes), validate);
+    }
+
+    public static PublicParameters readPublicParameters(ByteBuffer buffer) {
+        return readPublicParameters(buffer, false);
+    }
+
+    public static PublicParameters readPublicParameters(ByteBuffer buffer, boolean validate) {
+        boolean compressed = isCompressed(readHeader(buffer, PUBLIC_PARAMETERS));
+        int pairingParametersLength = buffer.getInt();
+        if(pairingParametersLength < 0 || pairingParametersLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length of the pairing parameters.");
+        }
+        byte[] pairingParametersBytes = new byte[pairingParametersLength];
+        buffer.get(pairingParametersBytes);
+        PairingParameters pairingParameters = decodePairingParameters(pairingParametersBytes);
+        Pairing pairing = PairingFactory.getPairing(pairingParameters);
+        Field G = pairing.getG1();
+        int identityLength = buffer.getInt();
+        int messageLength = buffer.getInt();
+        int pointLength = compressed ? compressedLength(G) : G.getLengthInBytes();
+        if(identityLength < 0 || messageLength < 0
+                || (long) (5 + identityLength + messageLength) * pointLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid identity or message length.");
+        }
+        // The parameters are decoded once, so their points are not cached.
+        Element g = readPoint(buffer, G, compressed, null, validate);
+        Element g1 = readPoint(buffer, G, compressed, null, validate);
+        Element g2 = readPoint(buffer, G, compressed, null, validate);
+        Element uPrime = readPoint(buffer, G, compressed, null, validate);
+        Element mPrime = readPoint(buffer, G, compressed, null, validate);
+        Element[] U = new Element[identityLength];
+        for(int i = 0; i < identityLength; i++) {
+            U[i] = readPoint(buffer, G, compressed, null, validate);
+        }
+        Element[] M = new Element[messageLength];
+        for(int i = 0; i < messageLength; i++) {
+            M[i] = readPoint(buffer, G, compressed, null, validate);
+        }
+        return new PublicParameters(pairing, pairingParameters, g, g1, g2, uPrime, mPrime, U, M);
+    }
+
+    /**
+     * Writes the encoding of the public parameters into a file.
+     */
+    public static void save(PublicParameters publicParameters, Path path, boolean compressed) throws IOException {
+        Files.write(path, encode(publicParameters, compressed));
+    }
+
+    /**
+     * Reads the public parameters from a file, which is memory-mapped instead of being read into the heap.
+     */
+    public static PublicParameters loadPublicParameters(Path path) throws IOException {
+        return loadPublicParameters(path, false);
+    }
+
+    public static PublicParameters loadPublicParameters(Path path, boolean validate) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readPublicParameters(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), validate);
+        }
+    }
+
+    private static byte[] encodePairingParameters(PublicParameters publicParameters) {
+        if(publicParameters.getPairingParameters() == null) {
+            throw new IllegalArgumentException("The pairing parameters of the public parameters are not known.");
+        }
+        return encodePairingParameters(publicParameters.getPairingParameters());
+    }
+
+    /**
+     * The pairing parameters are encoded in the text format of jpbc, which `PropertiesParameters.load` reads.
+     */
+    public static byte[] encodePairingParameters(PairingParameters pairingParameters) {
+        return pairingParameters.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static PairingParameters decodePairingParameters(byte[] bytes) {
+        return new PropertiesParameters().load(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Writes the pairing parameters into a file, in the same text format as the `.param` files of PBC and jpbc.
+     */
+    public static void savePairingParameters(PairingParameters pairingParameters, Path path) throws IOException {
+        Files.write(path, encodePairingParameters(pairingParameters));
+    }
+
+    public static PairingParameters loadPairingParameters(Path path) throws IOException {
+        return decodePairingParameters(Files.readAllBytes(path));
+    }
+
+    // *** Private keys ***
+
+    public static byte[] encode(PrivateKey privateKey) {
+        return encode(privateKey, false);
+    }
+
+    public static byte[] encode(PrivateKey privateKey, boolean compressed) {
+        Field G = privateKey.getFirst().getField();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + 2 * pointLength(privateKey.getFirst(), compressed)
+                + integerLength(G));
+        write(buffer, privateKey, compressed);
+        return buffer.array();
+    }
+
+    public static void write(ByteBuffer buffer, PrivateKey privateKey) {
+        write(buffer, privateKey, false);
+    }
+
+    public static void write(ByteBuffer buffer, PrivateKey privateKey, boolean compressed) {
+        writeHeader(buffer, PRIVATE_KEY, flags(compressed));
+        writePoint(buffer, privateKey.getFirst(), compressed);
+        writePoint(buffer, privateKey.getSecond(), compressed);
+        writeInteger(buffer, privateKey.getR_u(), privateKey.getFirst().getField());
+    }
+
+    public static PrivateKey decodePrivateKey(byte[] bytes, PublicParameters publicParameters) {
+        return readPrivateKey(ByteBuffer.wrap(bytes), publicParameters);
+    }
+
+    public static PrivateKey readPrivateKey(ByteBuffer buffer, PublicParameters publicParameters) {
+        boolean compressed = isCompressed(readHeader(buffer, PRIVATE_KEY));
+        Element first = readPoint(buffer, publicParameters, compressed);
+        Element second = readPoint(buffer, publicParameters, compressed);
+        BigInteger r_u = readInteger(buffer, publicParameters.G);
+        return new PrivateKey(first, second, r_u);
+    }
+
+    // *** Signatures ***
+
+    public static byte[] encode(Signature signature) {
+        return encode(signature, false);
+    }
+
+    public static byte[] encode(Signature signature, boolean compressed) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + 3 * pointLength(signature.getFirst(), compressed));
+        write(buffer, signature, compressed);
+        return buffer.array();
+    }
+
+    public static void write(ByteBuffer buffer, Signature signature) {
+        write(buffer, signature, false);
+    }
+
+    public static void write(ByteBuffer buffer, Signature signature, boolean compressed) {
+        writeHeader(buffer, SIGNATURE, flags(compressed));
+        writePoint(buffer, signature.getFirst(), compressed);
+        writePoint(buffer, signature.getSecond(), compressed);
+        writePoint(buffer, signature.getThird(), compressed);
+    }
+
+    public static Signature decodeSignature(byte[] bytes, PublicParameters publicParameters) {
+        return readSignature(ByteBuffer.wrap(bytes), publicParameters);
+    }
+
+    public static Signature readSignature(ByteBuffer buffer, PublicParameters publicParameters) {
+        return readSignature(buffer, publicParameters, null);
+    }
+
+    /**
+     * Same as above, but takes compressed points from the cache, e.g. the second element, which is the same for every
+     * signature under a private key. The cache belongs to the caller, so it must only be used with these parameters.
+     * @param pointCache the cache of decompressed points, or null to decompress every point.
+     */
+    public static Signature decodeSignature(byte[] bytes, PublicParameters publicParameters, PointCache pointCache) {
+        return readSignature(ByteBuffer.wrap(bytes), publicParameters, pointCache);
+    }
+
+    public static Signature readSignature(ByteBuffer buffer, PublicParameters publicParameters, PointCache pointCache) {
+        boolean compressed = isCompressed(readHeader(buffer, SIGNATURE));
+        Element first = readPoint(buffer, publicParameters, compressed, pointCache);
+        Element second = readPoint(buffer, publicParameters, compressed, pointCache);
+        Element third = readPoint(buffer, publicParameters, compressed, pointCache);
+        return new Signature(first, second, third);
+    }
+
+    // *** Building blocks, also used by the encodings of the threshold scheme ***
+
+    public static void writeHeader(ByteBuffer buffer, byte type, byte flags) {
+        buffer.put(VERSION);
+        buffer.put(type);
+        buffer.put(flags);
+    }
+
+    /**
+     * Reads the header and makes sure that it is for the expected type.
+     * @return the flags.
+     */
+    public static byte readHeader(ByteBuffer buffer, byte type) {
+        byte version = buffer.get();
+        if(version != VERSION) {
+            throw new IllegalArgumentException("Unsupported encoding version " + version + ".");
+        }
+        byte actualType = buffer.get();
+        if(actualType != type) {
+            throw new IllegalArgumentException("Expected an encoding of type " + type + ", found " + actualType + ".");
+        }
+        return buffer.get();
+    }
+
+    public static byte flags(boolean compressed) {
+        return compressed ? COMPRESSED : 0;
+    }
+
+    public static boolean isCompressed(byte flags) {
+        return (flags & COMPRESSED) != 0;
+    }
+
+    public static void writeElement(ByteBuffer buffer, Element element) {
+        buffer.put(element.toBytes());
+    }
+
+    /**
+     * @return the immutable element.
+     * @throws IllegalArgumentException if the element is a point that is not on the curve or not in the group of order r.
+     */
+    public static Element readElement(ByteBuffer buffer, Field field) {
+        return readElement(buffer, field, true);
+    }
+
+    private static Element readElement(ByteBuffer buffer, Field field, boolean validate) {
+        int length = field.getLengthInBytes();
+        if(buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        Element element = field.newElement();
+        if(buffer.hasArray()) {
+            element.setFromBytes(buffer.array(), buffer.arrayOffset() + buffer.position());
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            element.setFromBytes(bytes);
+        }
+        return checkPoint(element, field, validate).getImmutable();
+    }
+
+    /**
+     * Points that are not in the group of order r, e.g. the point (0, 0) of order 2, make the pairing fail or are
+     * ignored by it, so they are rejected on decoding.
+     * @param validate whether the point is checked to be in the group of order r, otherwise only to be on the curve.
+     * @return the element, if it is not a point of a curve or a point of the group of order r.
+     */
+    private static Element checkPoint(Element element, Field field, boolean validate) {
+        if(!(element instanceof CurveElement)) {
+            return element;
+        }
+        // `setFromBytes` sets the points that are not on the curve to the point at infinity, which is never encoded.
+        if(element.isZero() || !((CurveElement<?, ?>) element).isValid()) {
+            throw new IllegalArgumentException("The point is not on the curve.");
+        }
+        if(validate && !isInGroup((CurveElement<?, ?>) element, field.getOrder())) {
+            throw new IllegalArgumentException("The point is not in the group of order r.");
+        }
+        return element;
+    }
+
+    /**
+     * Checks that point^r is the point at infinity. jpbc calculates it in affine coordinates, with a modular inversion
+     * for every doubling, so it is calculated here in Jacobian coordinates (X/Z^2, Y/Z^3) without any inversion, which
+     * is about five times faster. The point is public, so the calculation does not have to be constant-time.
+     */
+    private static boolean isInGroup(CurveElement<?, ?> point, BigInteger r) {
+        Instrumentation.count(Metrics.Counter.SUBGROUP_CHECK);
+        BigInteger q = point.getX().getField().getOrder();
+        BigInteger a = point.getField().getA().toBigInteger();
+        BigInteger x = point.getX().toBigInteger();
+        BigInteger y = point.getY().toBigInteger();
+        // Left-to-right double-and-add over the bits of r, starting from the point itself.
+        BigInteger X = x, Y = y, Z = BigInteger.ONE;
+        for(int bit = r.bitLength() - 2; bit >= 0; bit--) {
+            // Doubling, which keeps the point at infinity (Z = 0) and maps the points of order 2 (Y = 0) to it.
+            BigInteger XX = X.multiply(X).mod(q);
+            BigInteger YY = Y.multiply(Y).mod(q);
+            BigInteger YYYY = YY.multiply(YY).mod(q);
+            BigInteger ZZ = Z.multiply(Z).mod(q);
+            BigInteger S = square(X.add(YY), q).subtract(XX).subtract(YYYY).shiftLeft(1).mod(q);
+            BigInteger M = XX.multiply(THREE).add(a.multiply(ZZ).multiply(ZZ)).mod(q);
+            BigInteger T = M.multiply(M).subtract(S.shiftLeft(1)).mod(q);
+            Z = square(Y.add(Z), q).subtract(YY).subtract(ZZ).mod(q);
+            Y = M.multiply(S.subtract(T)).subtract(YYYY.shiftLeft(3)).mod(q);
+            X = T;
+            if(!r.testBit(bit)) {
+                continue;
+            }
+            // Addition of the affine point.
+            if(Z.signum() == 0) {
+                X = x;
+                Y = y;
+                Z = BigInteger.ONE;
+                continue;
+            }
+            BigInteger ZZ1 = Z.multiply(Z).mod(q);
+            BigInteger H = x.multiply(ZZ1).subtract(X).mod(q);
+            BigInteger R = y.multiply(Z).mod(q).multiply(ZZ1).subtract(Y).shiftLeft(1).mod(q);
+            if(H.signum() == 0) {
+                if(R.signum() != 0) {
+                    // The inverse of the point, so the sum is the point at infinity.
+                    Z = BigInteger.ZERO;
+                    continue;
+                }
+                // The point itself, which only happens if its order is below r. This rare case is left to jpbc.
+                return point.duplicate().pow(r).isZero();
+            }
+            BigInteger HH = H.multiply(H).mod(q);
+            BigInteger I = HH.shiftLeft(2).mod(q);
+            BigInteger J = H.multiply(I).mod(q);
+            BigInteger V = X.multiply(I).mod(q);
+            BigInteger X3 = R.multiply(R).subtract(J).subtract(V.shiftLeft(1)).mod(q);
+            Y = R.multiply(V.subtract(X3)).subtract(Y.multiply(J).shiftLeft(1)).mod(q);
+            Z = square(Z.add(H), q).subtract(ZZ1).subtract(HH).mod(q);
+            X = X3;
+        }
+        return Z.signum() == 0;
+    }
+
+    private static BigInteger square(BigInteger value, BigInteger q) {
+        return value.multiply(value).mod(q);
+    }
+
+    /**
+     * @return the length of the encoding of an integer mod the order of the field.
+     */
+    public static int integerLength(Field field) {
+        return (field.getOrder().bitLength() + 7) / 8;
+    }
+
+    /**
+     * Writes a non-negative integer that is smaller than the order of the field, in big-endian order.
+     */
+    public static void writeInteger(ByteBuffer buffer, BigInteger value, Field field) {
+        int length = integerLength(field);
+        byte[] bytes = value.toByteArray();
+        // Drop the sign byte, or pad with zeros.
+        int significant = (bytes.length > 1 && bytes[0] == 0) ? bytes.length - 1 : bytes.length;
+        if(value.signum() < 0 || significant > length) {
+            throw new IllegalArgumentException("The integer does not fit into " + length + " bytes.");
+        }
+        for(int i = significant; i < length; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.put(bytes, bytes.length - significant, significant);
+    }
+
+    public static BigInteger readInteger(ByteBuffer buffer, Field field) {
+        byte[] bytes = new byte[integerLength(field)];
+        buffer.get(bytes);
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * Writes a point of G, compressed if requested.
+     */
+    public static void writePoint(ByteBuffer buffer, Element point, boolean compressed) {
+        buffer.put(compressed ? toCurveElement(point).toBytesCompressed() : point.toBytes());
+    }
+
+    /**
+     * Reads a point of G, compressed if requested.
+     * @return the immutable point.
+     * @throws IllegalArgumentException if the point is not on the curve or not in the group of order r.
+     */
+    public static Element readPoint(ByteBuffer buffer, PublicParameters publicParameters, boolean compressed) {
+        return readPoint(buffer, publicParameters, compressed, null);
+    }
+
+    /**
+     * Same as above, but takes compressed points from the cache if it is not null.
+     */
+    public static Element readPoint(ByteBuffer buffer, PublicParameters publicParameters, boolean compressed,
+                                    PointCache pointCache) {
+        return readPoint(buffer, publicParameters.G, compressed, pointCache, true);
+    }
+
+    private static Element readPoint(ByteBuffer buffer, Field G, boolean compressed, PointCache cache,
+                                     boolean validate) {
+        if(!compressed) {
+            return readElement(buffer, G, validate);
+        }
+        int length = compressedLength(G);
+        if(buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        if(cache != null) {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return cache.decompress(bytes, G);
+        }
+        if(buffer.hasArray()) {
+            Element point = decompress(buffer.array(), buffer.arrayOffset() + buffer.position(), G, validate);
+            buffer.position(buffer.position() + length);
+            return point;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return decompress(bytes, 0, G, validate);
+    }
+
+    /**
+     * @return the immutable point with the compressed encoding at the offset.
+     * @throws IllegalArgumentException if the point is not on the curve or not in the group of order r.
+     */
+    public static Element decompress(byte[] bytes, int offset, Field G) {
+        return decompress(bytes, offset, G, true);
+    }
+
+    private static Element decompress(byte[] bytes, int offset, Field G, boolean validate) {
+        Element point = G.newElement();
+        toCurveElement(point).setFromBytesCompressed(bytes, offset);
+        // An x-coordinate without a square root gives a point that is not on the curve.
+        return checkPoint(point, G, validate).getImmutable();
+    }
+
+    /**
+     * @return the length of a compressed point of the field.
+     */
+    public static int compressedLength(Field G) {
+        return toCurveElement(G.newElement()).getLengthInBytesCompressed();
+    }
+
+    private static int pointLength(Element point, boolean compressed) {
+        return compressed ? toCurveElement(point).getLengthInBytesCompressed() : point.getLengthInBytes();
+    }
+
+    private static CurveElement<?, ?> toCurveElement(Element point) {
+        if(!(point instanceof CurveElement)) {
+            throw new IllegalArgumentException("Only points of elliptic curves can be compressed.");
+        }
+        return (CurveElement<?, ?>) point;
+    }
+}
@@ -0,0 +1,59 @@
+package gcrypto;
+
+/**
+ * The outcome of extracting the private key of a single identity in `Scheme.ExtractAll`.
+ */
+public final class ExtractResult {
+    private final BitString identity;
+    private final PrivateKey privateKey;
+    private final String error;
+    private final Exception cause;
+
+    private ExtractResult(BitString identity, PrivateKey privateKey, String error, Exception cause) {
+        this.identity = identity;
+        this.privateKey = privateKey;
+        this.error = error;
+        this.cause = cause;
+    }
+
+    static ExtractResult success(BitString identity, PrivateKey privateKey) {
+        return new ExtractResult(identity, privateKey, null, null);
+    }
+
+    static ExtractResult failure(BitString identity, String error) {
+        return new ExtractResult(identity, null, error, null);
+    }
+
+    static ExtractResult failure(BitString identity, Exception cause) {
+        return new ExtractResult(identity, null, cause.toString(), cause);
+    }
+
+    public BitString getIdentity() {
+        return identity;
+    }
+
+    public boolean isSuccess() {
+        return privateKey != null;
+    }
+
+    /**
+     * @return the private key, or null if the extraction failed.
+     */
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    /**
+     * @return the reason of the failure, or null if the extraction succeeded.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return the exception that the extraction failed with, or null if it did not throw.
+     */
+    public Exception getCause() {
+        return cause;
+    }
+}
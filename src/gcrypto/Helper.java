@@ -1,16 +1,171 @@
 package gcrypto;
 
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 public class Helper {
     // Allows us to take the negative exponents of elements.
     public static Element power(Element base, BigInteger exponent) {
+        Instrumentation.count(Metrics.Counter.POWER);
         Element result = base.getImmutable().pow(exponent.abs()).getImmutable();
         if(exponent.signum() < 0) {
             result = result.invert();
         }
         return result.getImmutable();
     }
+
+    // Same as above, but uses a fixed-base exponentiation table for the base.
+    public static Element power(ElementPowPreProcessing base, BigInteger exponent) {
+        Instrumentation.count(Metrics.Counter.FIXED_BASE_POWER);
+        Element result = base.pow(exponent.abs());
+        if(exponent.signum() < 0) {
+            result = result.invert();
+        }
+        return result.getImmutable();
+    }
+
+    /**
+     * Calculates the product of bases[i]^exponents[i] in a single pass, sharing the squarings between all the bases.
+     * Depending on the number of bases and the length of the exponents, either a sliding-window Straus (few bases) or
+     * a bucketed Pippenger (many bases) is used, whichever needs fewer group operations.
+     * @param bases elements from the same group.
+     * @param exponents the exponents of the bases, in the same order.
+     * @return the calculated product.
+     */
+    public static Element multiPower(Element[] bases, BigInteger[] exponents) {
+        Instrumentation.count(Metrics.Counter.MULTI_POWER);
+        Element[] positiveBases = new Element[bases.length];
+        BigInteger[] positiveExponents = new BigInteger[bases.length];
+        int bits = 0;
+        for(int i = 0; i < bases.length; i++) {
+            positiveBases[i] = (exponents[i].signum() < 0) ? bases[i].getImmutable().invert() : bases[i];
+            positiveExponents[i] = exponents[i].abs();
+            bits = Math.max(bits, positiveExponents[i].bitLength());
+        }
+        if(bits == 0) {
+            return bases[0].getField().newOneElement().getImmutable();
+        }
+        int n = bases.length;
+        int strausWindow = 1;
+        for(int w = 2; w <= 8; w++) {
+            if(strausCost(n, bits, w) < strausCost(n, bits, strausWindow)) strausWindow = w;
+        }
+        int pippengerWindow = 1;
+        for(int c = 2; c <= 16; c++) {
+            if(pippengerCost(n, bits, c) < pippengerCost(n, bits, pippengerWindow)) pippengerWindow = c;
+        }
+        if(pippengerCost(n, bits, pippengerWindow) < strausCost(n, bits, strausWindow)) {
+            return pippenger(positiveBases, positiveExponents, bits, pippengerWindow);
+        }
+        return straus(positiveBases, positiveExponents, bits, strausWindow);
+    }
+
+    // Approximate number of multiplications and squarings for each method.
+    private static long strausCost(int n, int bits, int window) {
+        return bits + (long) n * ((1L << (window - 1)) + bits / (window + 1));
+    }
+
+    private static long pippengerCost(int n, int bits, int window) {
+        return bits + (long) ((bits + window - 1) / window) * (n + (1L << (window + 1)));
+    }
+
+    /**
+     * Every exponent is recoded into odd digits of at most `window` bits, and every base gets a table of its odd
+     * powers, so that a digit costs a single multiplication.
+     */
+    private static Element straus(Element[] bases, BigInteger[] exponents, int bits, int window) {
+        int n = bases.length;
+        Element[][] oddPowers = new Element[n][];
+        int[][] digits = new int[n][];
+        for(int i = 0; i < n; i++) {
+            digits[i] = slidingWindowDigits(exponents[i], bits, window);
+            // oddPowers[i][j] = bases[i]^(2j+1)
+            oddPowers[i] = new Element[1 << (window - 1)];
+            oddPowers[i][0] = bases[i].getImmutable();
+            if(oddPowers[i].length > 1) {
+                Element square = bases[i].duplicate().square().getImmutable();
+                for(int j = 1; j < oddPowers[i].length; j++) {
+                    oddPowers[i][j] = oddPowers[i][j-1].mul(square).getImmutable();
+                }
+            }
+        }
+        Element result = bases[0].getField().newOneElement();
+        for(int bit = bits - 1; bit >= 0; bit--) {
+            result.square();
+            for(int i = 0; i < n; i++) {
+                int digit = digits[i][bit];
+                if(digit != 0) {
+                    result.mul(oddPowers[i][digit >>> 1]);
+                }
+            }
+        }
+        return result.getImmutable();
+    }
+
+    // digits[bit] is either 0 or an odd value below 2^window, such that the sum of digits[bit] * 2^bit is the exponent.
+    private static int[] slidingWindowDigits(BigInteger exponent, int bits, int window) {
+        int[] digits = new int[bits];
+        int bit = 0;
+        while(bit < bits) {
+            if(!exponent.testBit(bit)) {
+                bit++;
+                continue;
+            }
+            int digit = 0;
+            for(int j = 0; j < window && bit + j < bits; j++) {
+                if(exponent.testBit(bit + j)) digit |= 1 << j;
+            }
+            digits[bit] = digit;
+            bit += window;
+        }
+        return digits;
+    }
+
+    /**
+     * The exponents are split into windows of `window` bits. For every window, the bases are sorted into buckets by
+     * their digit, and the buckets are combined with a running product, so that every base costs one multiplication
+     * per window regardless of its digit.
+     */
+    private static Element pippenger(Element[] bases, BigInteger[] exponents, int bits, int window) {
+        Element result = bases[0].getField().newOneElement();
+        Element[] buckets = new Element[1 << window];
+        for(int start = (bits - 1) / window * window; start >= 0; start -= window) {
+            for(int j = 0; j < window; j++) {
+                result.square();
+            }
+            Arrays.fill(buckets, null);
+            for(int i = 0; i < bases.length; i++) {
+                int digit = 0;
+                for(int j = 0; j < window; j++) {
+                    if(exponents[i].testBit(start + j)) digit |= 1 << j;
+                }
+                if(digit == 0) continue;
+                if(buckets[digit] == null) {
+                    buckets[digit] = bases[i].duplicate();
+                } else {
+                    buckets[digit].mul(bases[i]);
+                }
+            }
+            // sum = prod(buckets[d]^d) = prod over d of (buckets[d] * ... * buckets[max]).
+            Element running = null;
+            Element sum = null;
+            for(int digit = buckets.length - 1; digit > 0; digit--) {
+                if(buckets[digit] != null) {
+                    if(running == null) running = buckets[digit];
+                    else running.mul(buckets[digit]);
+                }
+                if(running != null) {
+                    if(sum == null) sum = running.duplicate();
+                    else sum.mul(running);
+                }
+            }
+            if(sum != null) {
+                result.mul(sum);
+            }
+        }
+        return result.getImmutable();
+    }
 }
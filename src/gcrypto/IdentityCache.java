@@ -0,0 +1,84 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
+
+import java.math.BigInteger;
+
+/**
+ * Caches the values that only depend on an identity, so that they are computed once for long-lived identities.
+ */
+public class IdentityCache extends LruCache<BitString, IdentityCache.Entry> {
+    // Number of exponentiations (or pairings) of the same identity multiplier after which a fixed-base table (or a
+    // preprocessed pairing) is built for it. Building either costs a few exponentiations (or about one pairing).
+    public static final int TABLE_THRESHOLD = 4;
+
+    public IdentityCache(int capacity) {
+        super(capacity);
+    }
+
+    public static class Entry {
+        private final Element multiplier;
+        private int exponentiations = 0;
+        private int pairings = 0;
+        private volatile ElementPowPreProcessing powPreProcessing;
+        private volatile PairingPreProcessing pairingPreProcessing;
+        private volatile Element pairingWithG;
+
+        public Entry(Element multiplier) {
+            this.multiplier = multiplier.getImmutable();
+        }
+
+        public Element getMultiplier() {
+            return multiplier;
+        }
+
+        /**
+         * Raises the identity multiplier to the given exponent. Once the multiplier has been exponentiated
+         * `TABLE_THRESHOLD` times, a fixed-base table is built and used for it.
+         */
+        public Element power(BigInteger exponent) {
+            ElementPowPreProcessing table = powPreProcessing;
+            if(table == null) {
+                synchronized(this) {
+                    if(powPreProcessing == null && ++exponentiations >= TABLE_THRESHOLD) {
+                        powPreProcessing = multiplier.getElementPowPreProcessing();
+                    }
+                    table = powPreProcessing;
+                }
+            }
+            return (table != null) ? Helper.power(table, exponent) : Helper.power(multiplier, exponent);
+        }
+
+        /**
+         * Calculates e(identityMultiplier, a). Once the multiplier has been paired `TABLE_THRESHOLD` times, its
+         * pairing is preprocessed with the given verifier and used for it.
+         */
+        public Element pair(Verifier verifier, Element a) {
+            PairingPreProcessing preprocessed = pairingPreProcessing;
+            if(preprocessed == null) {
+                synchronized(this) {
+                    if(pairingPreProcessing == null && ++pairings >= TABLE_THRESHOLD) {
+                        pairingPreProcessing = verifier.preprocess(multiplier);
+                    }
+                    preprocessed = pairingPreProcessing;
+                }
+            }
+            Instrumentation.count(Metrics.Counter.PAIRING);
+            return (preprocessed != null) ? preprocessed.pairing(a) : verifier.getPairing().pairing(multiplier, a);
+        }
+
+        /**
+         * @return e(identityMultiplier, g), which is computed once using the given verifier.
+         */
+        public Element getPairingWithG(Verifier verifier) {
+            Element value = pairingWithG;
+            if(value == null) {
+                value = verifier.pairWithG(multiplier);
+                pairingWithG = value;
+            }
+            return value;
+        }
+    }
+}
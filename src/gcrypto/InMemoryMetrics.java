@@ -0,0 +1,68 @@
+package gcrypto;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the counters and a latency histogram per operation in memory, e.g. to export them periodically or to compare
+ * them between versions.
+ */
+public class InMemoryMetrics implements Metrics {
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+
+    public InMemoryMetrics() {
+        // The maps are filled once and only read afterwards, so they can be shared between threads.
+        for(Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        for(Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void count(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    @Override
+    public void record(Operation operation, long nanos) {
+        latencies.get(operation).record(nanos);
+    }
+
+    public long getCount(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    /**
+     * @return one line per counter and per operation that has been called, with the count, the mean and the 50th, 99th
+     * and 100th percentiles of the latency in microseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(Counter counter : Counter.values()) {
+            builder.append(counter).append(' ').append(getCount(counter)).append('\n');
+        }
+        for(Operation operation : Operation.values()) {
+            LatencyHistogram histogram = getLatency(operation);
+            if(histogram.getCount() == 0) {
+                continue;
+            }
+            builder.append(operation)
+                    .append(" count=").append(histogram.getCount())
+                    .append(" mean=").append((long) histogram.getMeanNanos() / 1000)
+                    .append("us p50=").append(histogram.getPercentileNanos(50) / 1000)
+                    .append("us p99=").append(histogram.getPercentileNanos(99) / 1000)
+                    .append("us max=").append(histogram.getMaxNanos() / 1000)
+                    .append("us\n");
+        }
+        return builder.toString();
+    }
+}
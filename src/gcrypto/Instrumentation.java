@@ -0,0 +1,51 @@
+package gcrypto;
+
+/**
+ * Holds the active `Metrics` implementation, which every operation of the library reports to. By default, the
+ * no-op implementation is active, and the instrumentation only costs a volatile read per call.
+ */
+public final class Instrumentation {
+    private static volatile Metrics metrics = Metrics.NOOP;
+
+    private Instrumentation() {
+    }
+
+    /**
+     * @param metrics the implementation to report to, or null to disable the reporting.
+     */
+    public static void setMetrics(Metrics metrics) {
+        Instrumentation.metrics = (metrics != null) ? metrics : Metrics.NOOP;
+    }
+
+    public static Metrics getMetrics() {
+        return metrics;
+    }
+
+    public static void count(Metrics.Counter counter) {
+        count(counter, 1);
+    }
+
+    public static void count(Metrics.Counter counter, long amount) {
+        Metrics metrics = Instrumentation.metrics;
+        if(metrics != Metrics.NOOP) {
+            metrics.count(counter, amount);
+        }
+    }
+
+    /**
+     * @return the start time of an operation, or 0 if the reporting is disabled.
+     */
+    public static long start() {
+        return (metrics != Metrics.NOOP) ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports the latency of an operation that was started with `start`.
+     */
+    public static void stop(Metrics.Operation operation, long start) {
+        Metrics metrics = Instrumentation.metrics;
+        if(start != 0 && metrics != Metrics.NOOP) {
+            metrics.record(operation, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package gcrypto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe cache that evicts the least recently used entry once it is full.
+ */
+public class LruCache<K, V> {
+    private final int capacity;
+    private final LinkedHashMap<K, V> map;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public LruCache(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("The capacity of the cache must be positive.");
+        }
+        this.capacity = capacity;
+        // Access order, so that the eldest entry is the least recently used one.
+        this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if(size() > LruCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key, or computes and caches it if it is missing. The value is computed outside
+     * the lock, so a missing key may be computed more than once under contention.
+     */
+    public V get(K key, Function<K, V> compute) {
+        synchronized(this) {
+            V value = map.get(key);
+            if(value != null) {
+                hits++;
+                return value;
+            }
+            misses++;
+        }
+        V value = compute.apply(key);
+        synchronized(this) {
+            V existing = map.putIfAbsent(key, value);
+            return (existing != null) ? existing : value;
+        }
+    }
+
+    public synchronized V getIfPresent(K key) {
+        return map.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,54 @@
+package gcrypto;
+
+/**
+ * Receives the counts of the group operations and the latencies of the scheme operations. Implementations are called
+ * from many threads at once, on the hot paths, so they must be thread-safe and cheap. The active implementation is set
+ * with `Instrumentation.setMetrics`.
+ */
+public interface Metrics {
+    // Does nothing. The default, in which case the latencies are not even measured.
+    Metrics NOOP = new Metrics() {
+        @Override
+        public void count(Counter counter, long amount) {
+        }
+
+        @Override
+        public void record(Operation operation, long nanos) {
+        }
+    };
+
+    enum Counter {
+        // A single pairing, also for every pair of a product of pairings.
+        PAIRING,
+        // An exponentiation of a variable base.
+        POWER,
+        // An exponentiation with a fixed-base table.
+        FIXED_BASE_POWER,
+        // A multi-exponentiation, counted once regardless of the number of bases.
+        MULTI_POWER,
+        // A group multiplication while calculating an identity or message multiplier.
+        MULTIPLIER_MULTIPLICATION,
+        // A check that a decoded point is in the group of order r.
+        SUBGROUP_CHECK
+    }
+
+    enum Operation {
+        SETUP,
+        EXTRACT,
+        SIGN,
+        VERIFY,
+        VERIFY_BATCH,
+        KEY_DIS,
+        THR_SIG,
+        VERIFY_SHARE,
+        VERIFY_SHARES,
+        RECONSTRUCT
+    }
+
+    void count(Counter counter, long amount);
+
+    /**
+     * @param nanos the end-to-end latency of a single call of the operation.
+     */
+    void record(Operation operation, long nanos);
+}
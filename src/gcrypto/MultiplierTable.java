@@ -0,0 +1,79 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+
+public class MultiplierTable {
+    // Number of bits that are covered by a single table lookup.
+    public static final int WINDOW = 8;
+
+    private final Element coeff;
+    private final int length;
+    // table[w][mask] = product of vector[w*WINDOW + i] for every bit i that is set in mask.
+    private final Element[][] table;
+
+    /**
+     * Precomputes the subset products of the given vector for every window of `WINDOW` bits.
+     * @param coeff can be either u_prime or m_prime.
+     * @param vector can be either U or M.
+     */
+    public MultiplierTable(Element coeff, Element[] vector) {
+        this.coeff = coeff.getImmutable();
+        this.length = vector.length;
+        int windows = (length + WINDOW - 1) / WINDOW;
+        this.table = new Element[windows][];
+        for(int w = 0; w < windows; w++) {
+            int bits = Math.min(WINDOW, length - w * WINDOW);
+            Element[] products = new Element[1 << bits];
+            products[0] = coeff.getField().newOneElement().getImmutable();
+            for(int mask = 1; mask < products.length; mask++) {
+                // Extend the product without the lowest set bit by the corresponding vector element.
+                int lowest = Integer.numberOfTrailingZeros(mask);
+                products[mask] = products[mask & (mask - 1)].mul(vector[w * WINDOW + lowest]).getImmutable();
+            }
+            table[w] = products;
+        }
+    }
+
+    /**
+     * Calculates the same value as `Scheme.calculateMultiplier`, with one multiplication per window.
+     * @param bits can be message or identity.
+     * @return the calculated value.
+     * @throws IllegalArgumentException if the length of the bits is not the length of the vector.
+     */
+    public Element calculate(BitString bits) {
+        if(bits.length() != length) {
+            throw new IllegalArgumentException("Expected " + length + " bits, found " + bits.length() + ".");
+        }
+        Element b = coeff.duplicate();
+        int multiplications = 0;
+        for(int w = 0; w < table.length; w++) {
+            int mask = bits.window(w * WINDOW, Math.min(WINDOW, length - w * WINDOW));
+            if(mask != 0) {
+                b.mul(table[w][mask]);
+                multiplications++;
+            }
+        }
+        Instrumentation.count(Metrics.Counter.MULTIPLIER_MULTIPLICATION, multiplications);
+        return b.getImmutable();
+    }
+
+    public Element calculate(String bits) {
+        return calculate(BitString.fromString(bits));
+    }
+
+    public int getEntryCount() {
+        int count = 0;
+        for(Element[] products : table) {
+            count += products.length;
+        }
+        return count;
+    }
+
+    /**
+     * @return the encoded length of the elements of the table in bytes. The elements take about 2.5 times as much on
+     * the heap, since jpbc keeps every coordinate in its own objects.
+     */
+    public long getEncodedSizeInBytes() {
+        return (long) getEntryCount() * coeff.getLengthInBytes();
+    }
+}
@@ -0,0 +1,147 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+
+import java.math.BigInteger;
+
+/**
+ * Calculates the identity and message multipliers of a set of public parameters, optionally with subset-product
+ * tables for U and M and a bounded cache of identity multipliers. Every scheme and verifier has its own, so enabling
+ * the tables or the cache for one of them does not change the others that share the public parameters. The tables
+ * are built lazily in a thread-safe way, so an instance can be shared between threads.
+ */
+public class Multipliers {
+    private final PublicParameters publicParameters;
+    private final boolean multiplierTables;
+    // Disabled if null.
+    private final IdentityCache identityCache;
+
+    private volatile MultiplierTable identityTable;
+    private volatile MultiplierTable messageTable;
+
+    /**
+     * Calculates the multipliers from U and M, without tables or a cache.
+     */
+    public Multipliers(PublicParameters publicParameters) {
+        this(publicParameters, false, 0);
+    }
+
+    /**
+     * @param multiplierTables whether to use subset-product tables for U and M, which are built on first use.
+     * @param identityCacheCapacity the capacity of the identity cache, or 0 to disable it.
+     */
+    public Multipliers(PublicParameters publicParameters, boolean multiplierTables, int identityCacheCapacity) {
+        this(publicParameters, multiplierTables,
+                (identityCacheCapacity > 0) ? new IdentityCache(identityCacheCapacity) : null);
+    }
+
+    private Multipliers(PublicParameters publicParameters, boolean multiplierTables, IdentityCache identityCache) {
+        this.publicParameters = publicParameters;
+        this.multiplierTables = multiplierTables;
+        this.identityCache = identityCache;
+    }
+
+    /**
+     * @return multipliers with the same identity cache that use the tables as requested.
+     */
+    public Multipliers withMultiplierTables(boolean multiplierTables) {
+        if(multiplierTables == this.multiplierTables) {
+            return this;
+        }
+        return new Multipliers(publicParameters, multiplierTables, identityCache);
+    }
+
+    public PublicParameters getPublicParameters() {
+        return publicParameters;
+    }
+
+    public boolean hasMultiplierTables() {
+        return multiplierTables;
+    }
+
+    /**
+     * @return the subset-product table for u' and U, or null if the tables are not enabled.
+     */
+    public MultiplierTable getIdentityTable() {
+        if(!multiplierTables) {
+            return null;
+        }
+        if(identityTable == null) {
+            synchronized(this) {
+                if(identityTable == null) {
+                    identityTable = new MultiplierTable(publicParameters.uPrime, publicParameters.U);
+                }
+            }
+        }
+        return identityTable;
+    }
+
+    /**
+     * @return the subset-product table for m' and M, or null if the tables are not enabled.
+     */
+    public MultiplierTable getMessageTable() {
+        if(!multiplierTables) {
+            return null;
+        }
+        if(messageTable == null) {
+            synchronized(this) {
+                if(messageTable == null) {
+                    messageTable = new MultiplierTable(publicParameters.mPrime, publicParameters.M);
+                }
+            }
+        }
+        return messageTable;
+    }
+
+    /**
+     * @return the identity cache, or null if it is not enabled.
+     */
+    public IdentityCache getIdentityCache() {
+        return identityCache;
+    }
+
+    /**
+     * @return the cache entry for the identity, or null if the identity cache is not enabled.
+     */
+    public IdentityCache.Entry getIdentityEntry(BitString identity) {
+        if(identityCache == null) {
+            return null;
+        }
+        return identityCache.get(identity, key -> new IdentityCache.Entry(calculateWithoutCache(key)));
+    }
+
+    public Element calculateIdentityMultiplier(BitString identity) {
+        IdentityCache.Entry entry = getIdentityEntry(identity);
+        if(entry != null) {
+            return entry.getMultiplier();
+        }
+        return calculateWithoutCache(identity);
+    }
+
+    private Element calculateWithoutCache(BitString identity) {
+        MultiplierTable table = getIdentityTable();
+        if(table != null) {
+            return table.calculate(identity);
+        }
+        return Scheme.calculateMultiplier(identity, publicParameters.uPrime, publicParameters.U);
+    }
+
+    /**
+     * Calculates identityMultiplier^exponent, using the fixed-base table of the identity cache entry if there is one.
+     */
+    public Element powerIdentityMultiplier(BitString identity, BigInteger exponent) {
+        IdentityCache.Entry entry = getIdentityEntry(identity);
+        if(entry != null) {
+            return entry.power(exponent);
+        }
+        return Helper.power(calculateWithoutCache(identity), exponent);
+    }
+
+    public Element calculateMessageMultiplier(BitString message) {
+        MultiplierTable table = getMessageTable();
+        if(table != null) {
+            return table.calculate(message);
+        }
+        return Scheme.calculateMultiplier(message, publicParameters.mPrime, publicParameters.M);
+    }
+}
@@ -0,0 +1,157 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+
+import java.math.BigInteger;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of (r, g^r) pairs, which background threads precompute before the messages are known. The signing
+ * methods that take a pool only calculate the message-dependent part online. Every nonce is handed out exactly once;
+ * if the pool is empty, a new nonce is calculated on the spot instead of waiting for the background threads.
+ * It is thread-safe.
+ */
+public class NoncePool implements AutoCloseable {
+    private final PublicParameters publicParameters;
+    private final BlockingQueue<Nonce> nonces;
+    private final Thread[] threads;
+
+    private final AtomicLong generated = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+    private final AtomicLong taken = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Starts the background threads, which keep the pool full.
+     * @param capacity the maximum number of precomputed nonces.
+     * @param threads the number of background threads.
+     */
+    public NoncePool(PublicParameters publicParameters, int capacity, int threads) {
+        if(capacity < 1 || threads < 1) {
+            throw new IllegalArgumentException("The capacity and the number of threads must be positive.");
+        }
+        this.publicParameters = publicParameters;
+        this.nonces = new ArrayBlockingQueue<>(capacity);
+        this.threads = new Thread[threads];
+        for(int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::refill, "gcrypto-nonce-pool-" + i);
+            // The threads must not keep the application running.
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            this.threads[i] = thread;
+            thread.start();
+        }
+    }
+
+    private void refill() {
+        try {
+            while(!Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                Nonce nonce = generate();
+                generationNanos.addAndGet(System.nanoTime() - start);
+                generated.incrementAndGet();
+                // Blocks while the pool is full.
+                nonces.put(nonce);
+            }
+        } catch(InterruptedException e) {
+            // Closed.
+        }
+    }
+
+    private Nonce generate() {
+        BigInteger r = Scheme.chooseRandom(publicParameters.G.getOrder());
+        return new Nonce(r, Helper.power(publicParameters.getGPowPreProcessing(), r));
+    }
+
+    /**
+     * Removes a nonce from the pool, or calculates a new one if the pool is empty.
+     */
+    public Nonce take() {
+        taken.incrementAndGet();
+        Nonce nonce = nonces.poll();
+        if(nonce == null) {
+            misses.incrementAndGet();
+            nonce = generate();
+        }
+        return nonce;
+    }
+
+    public PublicParameters getPublicParameters() {
+        return publicParameters;
+    }
+
+    /**
+     * @return the number of nonces that are currently in the pool.
+     */
+    public int getDepth() {
+        return nonces.size();
+    }
+
+    public int getCapacity() {
+        return nonces.size() + nonces.remainingCapacity();
+    }
+
+    /**
+     * @return the number of nonces that the background threads have calculated.
+     */
+    public long getGeneratedCount() {
+        return generated.get();
+    }
+
+    /**
+     * @return the number of nonces that were taken, including the ones that had to be calculated on the spot.
+     */
+    public long getTakenCount() {
+        return taken.get();
+    }
+
+    /**
+     * @return the number of nonces that were calculated on the spot, because the pool was empty.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of nonces per second that the background threads calculate while they are refilling the
+     * pool, or 0 if they have not calculated any yet.
+     */
+    public double getRefillRate() {
+        long nanos = generationNanos.get();
+        return (nanos == 0) ? 0 : generated.get() * 1e9 * threads.length / nanos;
+    }
+
+    /**
+     * Stops the background threads and discards the remaining nonces.
+     */
+    @Override
+    public void close() {
+        for(Thread thread : threads) {
+            thread.interrupt();
+        }
+        nonces.clear();
+    }
+
+    /**
+     * A random r and g^r.
+     */
+    public static final class Nonce {
+        private final BigInteger r;
+        private final Element gr;
+
+        private Nonce(BigInteger r, Element gr) {
+            this.r = r;
+            this.gr = gr.getImmutable();
+        }
+
+        public BigInteger getR() {
+            return r;
+        }
+
+        public Element getGr() {
+            return gr;
+        }
+    }
+}
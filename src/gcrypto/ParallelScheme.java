@@ -0,0 +1,92 @@
+package gcrypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * A thread-safe facade that signs and verifies on a fork-join pool. It only holds the immutable public parameters and
+ * a verifier, so a single instance can serve many request threads at once.
+ */
+public class ParallelScheme implements AutoCloseable {
+    private final PublicParameters publicParameters;
+    private final Verifier verifier;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+
+    /**
+     * Uses a new pool with one thread per core.
+     */
+    public ParallelScheme(Verifier verifier) {
+        this(verifier, new ForkJoinPool(), true);
+    }
+
+    /**
+     * Uses the given pool, which is not shut down by `close`.
+     */
+    public ParallelScheme(Verifier verifier, ForkJoinPool pool) {
+        this(verifier, pool, false);
+    }
+
+    private ParallelScheme(Verifier verifier, ForkJoinPool pool, boolean ownsPool) {
+        this.publicParameters = verifier.getPublicParameters();
+        this.verifier = verifier;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    public Verifier getVerifier() {
+        return verifier;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public CompletableFuture<Signature> sign(BitString message, PrivateKey privateKey) {
+        return CompletableFuture.supplyAsync(() -> Scheme.SignGlobal(message, privateKey, publicParameters), pool);
+    }
+
+    public CompletableFuture<Boolean> verify(BitString identity, BitString message, Signature signature) {
+        return CompletableFuture.supplyAsync(() -> verifier.verify(identity, message, signature), pool);
+    }
+
+    /**
+     * Signs every message with the same private key, in parallel.
+     * @return the signatures, in the order of the messages.
+     */
+    public List<Signature> signAll(List<BitString> messages, PrivateKey privateKey) {
+        return pool.submit(() -> messages.parallelStream()
+                .map(message -> Scheme.SignGlobal(message, privateKey, publicParameters))
+                .collect(Collectors.toList())).join();
+    }
+
+    /**
+     * Splits the signed messages into one chunk per thread and batch-verifies the chunks in parallel.
+     * @return the result for each signed message, in the given order.
+     */
+    public boolean[] verifyAll(List<SignedMessage> signedMessages) {
+        int size = signedMessages.size();
+        int chunks = Math.max(1, Math.min(size, pool.getParallelism()));
+        List<CompletableFuture<boolean[]>> futures = new ArrayList<>(chunks);
+        for(int chunk = 0; chunk < chunks; chunk++) {
+            List<SignedMessage> part = signedMessages.subList(chunk * size / chunks, (chunk + 1) * size / chunks);
+            futures.add(CompletableFuture.supplyAsync(() -> verifier.verifyBatch(part), pool));
+        }
+        boolean[] results = new boolean[size];
+        for(int chunk = 0; chunk < chunks; chunk++) {
+            boolean[] part = futures.get(chunk).join();
+            System.arraycopy(part, 0, results, chunk * size / chunks, part.length);
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        if(ownsPool) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Caches decompressed points by their compressed encoding. Decompressing a point takes a square root, while many
+ * decoded points repeat, e.g. the second element of every signature under the same private key.
+ */
+public class PointCache extends LruCache<ByteBuffer, Element> {
+
+    public PointCache(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Only valid points are cached, as `Codec.decompress` throws for the others.
+     * @param compressed the compressed encoding of the point, which must not be modified afterwards.
+     * @return the immutable point.
+     * @throws IllegalArgumentException if the point is not on the curve or not in the group of order r.
+     */
+    public Element decompress(byte[] compressed, Field field) {
+        return get(ByteBuffer.wrap(compressed), key -> Codec.decompress(compressed, 0, field));
+    }
+}
@@ -17,11 +17,11 @@ public class PrivateKey implements Serializable {
     }
 
     public Element getFirst() {
-        return first.getImmutable();
+        return first;
     }
 
     public Element getSecond() {
-        return second.getImmutable();
+        return second;
     }
 
     public BigInteger getR_u() {
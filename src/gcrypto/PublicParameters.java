@@ -1,28 +1,116 @@
 package gcrypto;
 
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
 import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingParameters;
 
+import java.util.Arrays;
 
+/**
+ * The public parameters of a scheme. They are immutable, and the values derived from them (the verifier of
+ * `Scheme.VerifyGlobal` and the fixed-base table for g) are built lazily in a thread-safe way, so a single instance
+ * can be shared between threads. The optional tables and caches are configured per scheme or verifier, see
+ * `Multipliers`, and for decoding with `Codec.decodeSignature(byte[], PublicParameters, PointCache)`.
+ */
 public class PublicParameters {
     // ** Please note that all the elements are `immutable`.
 
     // Input field.
-    public Field G;
+    public final Field G;
     // Output field.
-    public Field GT;
+    public final Field GT;
     // A random element from G.
-    public Element g;
+    public final Element g;
     // g to the power alpha.
-    public Element g1;
+    public final Element g1;
     // A random element from G.
-    public Element g2;
+    public final Element g2;
     // A random element from G.
-    public Element uPrime;
+    public final Element uPrime;
     // A random element from G.
-    public Element mPrime;
-    // A vector of random elements from G.
-    public Element[] U;
-    // A vector of random elements from G.
-    public Element[] M;
+    public final Element mPrime;
+    // A vector of random elements from G. Must not be modified.
+    public final Element[] U;
+    // A vector of random elements from G. Must not be modified.
+    public final Element[] M;
+
+    // The pairing that the parameters were generated with, if known.
+    private final Pairing pairing;
+    private final PairingParameters pairingParameters;
+
+    public PublicParameters(Field G, Field GT, Element g, Element g1, Element g2, Element uPrime, Element mPrime,
+                            Element[] U, Element[] M) {
+        this(null, null, G, GT, g, g1, g2, uPrime, mPrime, U, M);
+    }
+
+    /**
+     * Also keeps the pairing, so that the parameters can be encoded and verified on their own.
+     */
+    public PublicParameters(Pairing pairing, PairingParameters pairingParameters, Element g, Element g1, Element g2,
+                            Element uPrime, Element mPrime, Element[] U, Element[] M) {
+        this(pairing, pairingParameters, pairing.getG1(), pairing.getGT(), g, g1, g2, uPrime, mPrime, U, M);
+    }
+
+    private PublicParameters(Pairing pairing, PairingParameters pairingParameters, Field G, Field GT, Element g,
+                             Element g1, Element g2, Element uPrime, Element mPrime, Element[] U, Element[] M) {
+        this.pairing = pairing;
+        this.pairingParameters = pairingParameters;
+        this.G = G;
+        this.GT = GT;
+        this.g = g.getImmutable();
+        this.g1 = g1.getImmutable();
+        this.g2 = g2.getImmutable();
+        this.uPrime = uPrime.getImmutable();
+        this.mPrime = mPrime.getImmutable();
+        this.U = Arrays.stream(U).map(Element::getImmutable).toArray(Element[]::new);
+        this.M = Arrays.stream(M).map(Element::getImmutable).toArray(Element[]::new);
+    }
+
+    /**
+     * @return the pairing, or null if the parameters were created without it.
+     */
+    public Pairing getPairing() {
+        return pairing;
+    }
+
+    /**
+     * @return the parameters of the pairing, or null if the parameters were created without them.
+     */
+    public PairingParameters getPairingParameters() {
+        return pairingParameters;
+    }
+
+    // The verifier that `Scheme.VerifyGlobal` uses for these parameters. It is built lazily on first use.
+    private volatile Verifier verifier;
+
+    /**
+     * @param pairing the pairing that the parameters were generated with, used if the verifier is not built yet.
+     * @return a verifier for these parameters, which is built once and reused.
+     */
+    public Verifier getVerifier(Pairing pairing) {
+        if(verifier == null) {
+            synchronized(this) {
+                if(verifier == null) {
+                    verifier = new Verifier(this, (this.pairing != null) ? this.pairing : pairing);
+                }
+            }
+        }
+        return verifier;
+    }
+
+    // Fixed-base exponentiation table for g. It is built lazily on first use.
+    private volatile ElementPowPreProcessing gPowPreProcessing;
+
+    public ElementPowPreProcessing getGPowPreProcessing() {
+        if(gPowPreProcessing == null) {
+            synchronized(this) {
+                if(gPowPreProcessing == null) {
+                    gPowPreProcessing = g.getElementPowPreProcessing();
+                }
+            }
+        }
+        return gPowPreProcessing;
+    }
 }
@@ -1,17 +1,43 @@
 package gcrypto;
 
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
 import it.unisa.dia.gas.jpbc.Pairing;
 import it.unisa.dia.gas.jpbc.PairingParameters;
-import it.unisa.dia.gas.jpbc.PairingParametersGenerator;
 import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 import it.unisa.dia.gas.plaf.jpbc.pairing.a.TypeACurveGenerator;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * `Setup` and the setters must not be called concurrently with any other method. Once the setup is done, `Extract`,
+ * `Sign` and `Verify` (and the static variants) can be called from many threads at the same time.
+ */
 public class Scheme {
-    private static SecureRandom rand = new SecureRandom();
+    // Every thread has its own source of randomness, so that concurrent signers do not contend on it.
+    private static final ThreadLocal<SecureRandom> rand = ThreadLocal.withInitial(SecureRandom::new);
+
+    // Number of identities from which on `ExtractAll` builds a subset-product table for U, if the public parameters
+    // do not have one. Building the table costs about as much as calculating the multipliers of 100 identities.
+    public static final int EXTRACT_TABLE_THRESHOLD = 100;
+
+    // The Type A parameters of PBC (a.param): r = 2^159 + 2^107 + 1 and q = h*r - 1 are 160 and 512 bits.
+    public static final String STANDARD_PAIRING_PARAMETERS = "type a\n"
+            + "q 8780710799663312522437781984754049815806883199414208211028653399266475630880222957078625179422662221"
+            + "423155858769582317459277713367317481324925129998224791\n"
+            + "h 12016012264891146079388821366740534204802954401251311822919615131047207289359704531102844802183906537786776\n"
+            + "r 730750818665451621361119245571504901405976559617\n"
+            + "exp2 159\n"
+            + "exp1 107\n"
+            + "sign1 1\n"
+            + "sign0 1\n";
 
     protected int identityLength; // n_u
     protected int messageLength; // n_m
@@ -22,7 +48,16 @@ public class Scheme {
 
     protected Element masterSecret;
 
-    protected PublicParameters publicParameters = new PublicParameters();
+    protected PublicParameters publicParameters;
+    // The multiplier tables and the identity cache of this scheme. Rebuilt with the verifier.
+    protected Multipliers multipliers;
+    // Rebuilt on every `Setup`, so that it never outlives its public parameters.
+    protected Verifier verifier;
+    protected boolean productPairing = false;
+    protected boolean multiplierTables = false;
+    protected int identityCacheCapacity = 0;
+    // Used by `Sign` if not null.
+    protected NoncePool noncePool;
 
     public PairingParameters getPairingParameters() {
         return parameters;
@@ -32,20 +67,114 @@ public class Scheme {
         return publicParameters;
     }
 
+    public Verifier getVerifier() {
+        return verifier;
+    }
+
+    public Multipliers getMultipliers() {
+        return multipliers;
+    }
+
+    /**
+     * Selects the verification path used by `Verify`. Both paths give the same results.
+     * @param productPairing if true, the verification equation is checked with a single product of pairings instead
+     *                       of three separate pairings.
+     */
+    public void setProductPairing(boolean productPairing) {
+        this.productPairing = productPairing;
+        if(verifier != null) {
+            verifier = verifier.withProductPairing(productPairing);
+        }
+    }
+
     /**
-     * Generates the parameters for the pairing.
+     * Generates the parameters for the pairing. Please note that this searches for new primes, which takes seconds,
+     * and that the parameters are different every time.
      * @param rBits number of bits for r.
      * @param qBits number of bits for q.
      */
     public Scheme(int rBits, int qBits, int identityLength, int messageLength) {
+        this(new TypeACurveGenerator(rBits, qBits).generate(), identityLength, messageLength);
+    }
+
+    /**
+     * Uses existing parameters for the pairing, e.g. `standardPairingParameters()` or the ones loaded with
+     * `Codec.loadPairingParameters`.
+     */
+    public Scheme(PairingParameters parameters, int identityLength, int messageLength) {
         this.identityLength = identityLength;
         this.messageLength = messageLength;
 
-        PairingParametersGenerator pg = new TypeACurveGenerator(rBits, qBits);
-        this.parameters = pg.generate();
+        this.parameters = parameters;
         this.pairing = PairingFactory.getPairing(this.parameters);
     }
 
+    /**
+     * Uses existing public parameters, e.g. the ones loaded with `Codec.loadPublicParameters`. The master secret is
+     * not known, so the scheme can only sign with existing private keys and verify, unless `Setup` is called again.
+     * @param publicParameters public parameters that know their pairing.
+     */
+    public Scheme(PublicParameters publicParameters) {
+        if(publicParameters.getPairing() == null) {
+            throw new IllegalArgumentException("The pairing of the public parameters is not known.");
+        }
+        this.identityLength = publicParameters.U.length;
+        this.messageLength = publicParameters.M.length;
+        this.parameters = publicParameters.getPairingParameters();
+        this.pairing = publicParameters.getPairing();
+        this.publicParameters = publicParameters;
+        this.multipliers = new Multipliers(publicParameters, multiplierTables, identityCacheCapacity);
+        this.verifier = new Verifier(multipliers, pairing, productPairing);
+    }
+
+    /**
+     * @return the standard Type A parameters with a 160-bit group order and a 512-bit base field, which every process
+     * can share without generating or storing them.
+     */
+    public static PairingParameters standardPairingParameters() {
+        return Codec.decodePairingParameters(STANDARD_PAIRING_PARAMETERS.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Enables the precomputed subset-product tables for U and M of this scheme and its verifier. With them,
+     * calculating a multiplier takes one multiplication per byte of the identity or message. The tables are built on
+     * first use, and `MultiplierTable.getEncodedSizeInBytes` reports their encoded size. Other holders of the public
+     * parameters, e.g. the callers of `VerifyGlobal`, are not affected.
+     */
+    public void setMultiplierTables(boolean multiplierTables) {
+        this.multiplierTables = multiplierTables;
+        updateMultipliers();
+    }
+
+    /**
+     * Enables a bounded cache of identity multipliers for this scheme and its verifier, or disables it if the capacity
+     * is 0. Identities that are used repeatedly then skip the calculation of their multipliers, and the hit/miss
+     * counters of `getMultipliers().getIdentityCache()` show how effective the cache is.
+     */
+    public void setIdentityCacheCapacity(int identityCacheCapacity) {
+        this.identityCacheCapacity = identityCacheCapacity;
+        updateMultipliers();
+    }
+
+    private void updateMultipliers() {
+        if(publicParameters != null) {
+            multipliers = new Multipliers(publicParameters, multiplierTables, identityCacheCapacity);
+            verifier = verifier.withMultipliers(multipliers);
+        }
+    }
+
+    /**
+     * Makes `Sign` take its nonces from the given pool, or calculate them inline if the pool is null. The pool must be
+     * for the current public parameters, and it is not closed by the scheme.
+     */
+    public void setNoncePool(NoncePool noncePool) {
+        this.noncePool = noncePool;
+    }
+
+    public NoncePool getNoncePool() {
+        return noncePool;
+    }
+
     /**
      * Returns a random integer that is smaller than the given order.
      * @return a random integer mod p, where p is the order.
@@ -53,7 +182,7 @@ public class Scheme {
     protected static BigInteger chooseRandom(BigInteger order) {
         BigInteger alpha;
         while(true) {
-            alpha = new BigInteger(order.bitLength(), rand);
+            alpha = new BigInteger(order.bitLength(), rand.get());
             if(alpha.compareTo(order) < 0) {
                 break;
             }
@@ -70,27 +199,59 @@ public class Scheme {
      * @return the calculated value.
      */
     public static Element calculateMultiplier(String bits, Element coeff, Element[] vector) {
-        Element b = coeff.getImmutable();
-        for(int i = 0; i < bits.length(); i++) {
-            if(bits.charAt(i) == '1') {
-                b = b.mul(vector[i]);
+        return calculateMultiplier(BitString.fromString(bits), coeff, vector);
+    }
+
+    // Same as above, but iterates directly over the set bits of the bit string.
+    public static Element calculateMultiplier(BitString bits, Element coeff, Element[] vector) {
+        Element b = coeff.duplicate();
+        long[] words = bits.words();
+        int multiplications = 0;
+        for(int w = 0; w < words.length; w++) {
+            long word = words[w];
+            multiplications += Long.bitCount(word);
+            while(word != 0) {
+                b.mul(vector[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                // Clear the lowest set bit.
+                word &= word - 1;
             }
         }
+        Instrumentation.count(Metrics.Counter.MULTIPLIER_MULTIPLICATION, multiplications);
         return b.getImmutable();
     }
 
     // Public for debugging purposes.
     public static Element calculateIdentityMultiplier(String identity, PublicParameters publicParameters) {
+        return calculateIdentityMultiplier(BitString.fromString(identity), publicParameters);
+    }
+
+    // The static variants do not use tables or caches, see `Multipliers` for those.
+    public static Element calculateIdentityMultiplier(BitString identity, PublicParameters publicParameters) {
         return calculateMultiplier(identity,
                 publicParameters.uPrime, publicParameters.U);
     }
 
+    public static Element powerIdentityMultiplier(BitString identity, BigInteger exponent, PublicParameters publicParameters) {
+        return Helper.power(calculateIdentityMultiplier(identity, publicParameters), exponent);
+    }
+
     // Public for debugging purposes.
     public static Element calculateMessageMultiplier(String message, PublicParameters publicParameters) {
+        return calculateMessageMultiplier(BitString.fromString(message), publicParameters);
+    }
+
+    public static Element calculateMessageMultiplier(BitString message, PublicParameters publicParameters) {
         return calculateMultiplier(message,
                 publicParameters.mPrime, publicParameters.M);
     }
 
+    /**
+     * Hashes an arbitrary-length message to a bit string of `messageLength` bits.
+     */
+    public BitString hashMessage(byte[] message) {
+        return BitString.hash(message, messageLength);
+    }
+
     // For debugging purposes.
     public BigInteger getAlpha() {
         return alpha;
@@ -103,81 +264,237 @@ public class Scheme {
 
     // For debugging purposes.
     public Element pair(Element a, Element b) {
+        Instrumentation.count(Metrics.Counter.PAIRING);
         return pairing.pairing(a, b);
     }
 
     // *** Main functions ***
 
     public PublicParameters Setup(Authority authority) {
-        this.alpha = chooseRandom(this.pairing.getG1().getOrder());
-        // G1 == G2
-        publicParameters.G = pairing.getG1();
-        publicParameters.GT = pairing.getGT();
-        // We make use of the fact that every element in the input field is a generator.
-        publicParameters.g = publicParameters.G.newRandomElement().getImmutable();
-        publicParameters.g1 = Helper.power(publicParameters.g, alpha).getImmutable();
-        publicParameters.g2 = publicParameters.G.newRandomElement().getImmutable();
-        masterSecret = Helper.power(publicParameters.g2, alpha).getImmutable();
-        // Use the authority to generate u', m', U and M.
-        publicParameters.uPrime = authority.generateUPrime(publicParameters.G);
-        publicParameters.mPrime = authority.generateMPrime(publicParameters.G);
-        publicParameters.U = authority.generateUVector(publicParameters.G, identityLength);
-        publicParameters.M = authority.generateMVector(publicParameters.G, messageLength);
-        return publicParameters;
+        long start = Instrumentation.start();
+        try {
+            this.alpha = chooseRandom(this.pairing.getG1().getOrder());
+            // G1 == G2
+            Field G = pairing.getG1();
+            // We make use of the fact that every element in the input field is a generator.
+            Element g = G.newRandomElement().getImmutable();
+            Element g1 = Helper.power(g, alpha);
+            Element g2 = G.newRandomElement().getImmutable();
+            masterSecret = Helper.power(g2, alpha).getImmutable();
+            // Use the authority to generate u', m', U and M.
+            // Every setup creates new public parameters, so that verifiers built from the previous ones stay consistent.
+            publicParameters = new PublicParameters(pairing, parameters, g, g1, g2,
+                    authority.generateUPrime(G), authority.generateMPrime(G),
+                    authority.generateUVector(G, identityLength), authority.generateMVector(G, messageLength));
+            multipliers = new Multipliers(publicParameters, multiplierTables, identityCacheCapacity);
+            verifier = new Verifier(multipliers, pairing, productPairing);
+            return publicParameters;
+        } finally {
+            Instrumentation.stop(Metrics.Operation.SETUP, start);
+        }
     }
 
     public PrivateKey Extract(String identity) {
-        if(identity.length() != identityLength) {
-            System.err.println("Identity length is not correct.");
-            return null;
+        return Extract(BitString.fromString(identity));
+    }
+
+    public PrivateKey Extract(BitString identity) {
+        long start = Instrumentation.start();
+        try {
+            if(masterSecret == null) {
+                System.err.println("The master secret is not known.");
+                return null;
+            }
+            if(identity.length() != identityLength) {
+                System.err.println("Identity length is not correct.");
+                return null;
+            }
+            // Get a random integer mod p where p is the order of the input group.
+            BigInteger r_u = chooseRandom(this.pairing.getG1().getOrder());
+            Element a = masterSecret.mul(multipliers.powerIdentityMultiplier(identity, r_u));
+            Element b = Helper.power(publicParameters.getGPowPreProcessing(), r_u);
+            // a = (g2^alpha) * (identityMultiplier)^r_u
+            // b = g^r_u
+            return new PrivateKey(a, b, r_u);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.EXTRACT, start);
+        }
+    }
+
+    /**
+     * Extracts the private keys of many identities in parallel on the common fork-join pool.
+     * @see #ExtractAll(Collection, Consumer, ForkJoinPool)
+     */
+    public int ExtractAll(Collection<BitString> identities, Consumer<ExtractResult> sink) {
+        return ExtractAll(identities, sink, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Extracts the private keys of many identities in parallel, and passes every result to the sink as soon as it is
+     * ready, so that the keys do not have to be kept in memory. The sink is called from many threads at once, in no
+     * particular order, so it must be thread-safe. Every identity gets a result: identities with a wrong length, and
+     * identities whose extraction throws, fail on their own without stopping the others, and so do all of them if the
+     * master secret is not known. An exception from the sink is reported and does not stop the other identities either.
+     * The identity multipliers are calculated with a subset-product table for U, which is built for the call if the
+     * scheme does not have one and there are enough identities, and the identity cache is bypassed, since the
+     * identities are usually new.
+     * @param pool the pool to run on.
+     * @return the number of extracted private keys.
+     */
+    public int ExtractAll(Collection<BitString> identities, Consumer<ExtractResult> sink, ForkJoinPool pool) {
+        Element masterSecret = this.masterSecret;
+        PublicParameters publicParameters = this.publicParameters;
+        MultiplierTable table = null;
+        if(masterSecret == null) {
+            System.err.println("The master secret is not known.");
+        } else {
+            MultiplierTable schemeTable = multipliers.getIdentityTable();
+            table = (schemeTable == null && identities.size() >= EXTRACT_TABLE_THRESHOLD)
+                    ? new MultiplierTable(publicParameters.uPrime, publicParameters.U) : schemeTable;
+        }
+        MultiplierTable identityTable = table;
+        AtomicInteger extracted = new AtomicInteger();
+        pool.submit(() -> identities.parallelStream().forEach(identity -> {
+            ExtractResult result;
+            try {
+                result = extract(identity, masterSecret, identityTable, publicParameters);
+            } catch(RuntimeException e) {
+                result = ExtractResult.failure(identity, e);
+            }
+            if(result.isSuccess()) {
+                extracted.incrementAndGet();
+            }
+            try {
+                sink.accept(result);
+            } catch(RuntimeException e) {
+                System.err.println("The result of identity " + identity + " could not be passed to the sink: " + e);
+            }
+        })).join();
+        return extracted.get();
+    }
+
+    // Extracts the private key of a single identity of `ExtractAll`.
+    private ExtractResult extract(BitString identity, Element masterSecret, MultiplierTable table,
+                                  PublicParameters publicParameters) {
+        if(masterSecret == null) {
+            return ExtractResult.failure(identity, "The master secret is not known.");
+        }
+        if(identity == null || identity.length() != identityLength) {
+            return ExtractResult.failure(identity, "Identity length is not correct.");
+        }
+        long start = Instrumentation.start();
+        try {
+            Element identityMultiplier = (table != null) ? table.calculate(identity)
+                    : calculateMultiplier(identity, publicParameters.uPrime, publicParameters.U);
+            BigInteger r_u = chooseRandom(publicParameters.G.getOrder());
+            Element a = masterSecret.mul(Helper.power(identityMultiplier, r_u));
+            Element b = Helper.power(publicParameters.getGPowPreProcessing(), r_u);
+            return ExtractResult.success(identity, new PrivateKey(a, b, r_u));
+        } finally {
+            Instrumentation.stop(Metrics.Operation.EXTRACT, start);
         }
-        // Get a random integer mod p where p is the order of the input group.
-        BigInteger r_u = chooseRandom(this.pairing.getG1().getOrder());
-        Element a = masterSecret.mul(Helper.power(calculateIdentityMultiplier(identity, publicParameters), r_u));
-        Element b = Helper.power(publicParameters.g, r_u);
-        // a = (g2^alpha) * (identityMultiplier)^r_u
-        // b = g^r_u
-        return new PrivateKey(a, b, r_u);
     }
 
     public static Signature SignGlobal(String message, PrivateKey privateKey,
                                        PublicParameters publicParameters) {
-        // Get a random integer mod p where p is the order of the input group.
-        BigInteger r_m = chooseRandom(publicParameters.G.getOrder());
-        Element a = privateKey.getFirst();
-        Element b = calculateMessageMultiplier(message, publicParameters);
-        b = Helper.power(b, r_m);
-        a = a.mul(b);
-        Element c = privateKey.getSecond();
-        Element d = Helper.power(publicParameters.g, r_m);
-        return new Signature(a, c, d);
+        return SignGlobal(BitString.fromString(message), privateKey, publicParameters);
+    }
+
+    public static Signature SignGlobal(BitString message, PrivateKey privateKey,
+                                       PublicParameters publicParameters) {
+        return sign(message, privateKey, new Multipliers(publicParameters), null);
+    }
+
+    /**
+     * Same as above, but takes r_m and g^r_m from the pool, so only the power of the message multiplier is
+     * calculated online.
+     */
+    public static Signature SignGlobal(BitString message, PrivateKey privateKey,
+                                       PublicParameters publicParameters, NoncePool noncePool) {
+        return sign(message, privateKey, new Multipliers(publicParameters), noncePool);
+    }
+
+    // Signs with the given multipliers, and takes the nonce from the pool if it is not null.
+    private static Signature sign(BitString message, PrivateKey privateKey, Multipliers multipliers,
+                                  NoncePool noncePool) {
+        if(noncePool == null) {
+            return signWithoutNonce(message, privateKey, multipliers);
+        }
+        return signWithNonce(message, privateKey, multipliers, noncePool);
+    }
+
+    private static Signature signWithoutNonce(BitString message, PrivateKey privateKey, Multipliers multipliers) {
+        long start = Instrumentation.start();
+        try {
+            PublicParameters publicParameters = multipliers.getPublicParameters();
+            // Get a random integer mod p where p is the order of the input group.
+            BigInteger r_m = chooseRandom(publicParameters.G.getOrder());
+            Element a = privateKey.getFirst();
+            Element b = multipliers.calculateMessageMultiplier(message);
+            b = Helper.power(b, r_m);
+            a = a.mul(b);
+            Element c = privateKey.getSecond();
+            Element d = Helper.power(publicParameters.getGPowPreProcessing(), r_m);
+            return new Signature(a, c, d);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.SIGN, start);
+        }
+    }
+
+    private static Signature signWithNonce(BitString message, PrivateKey privateKey, Multipliers multipliers,
+                                           NoncePool noncePool) {
+        long start = Instrumentation.start();
+        try {
+            checkNoncePool(noncePool, multipliers.getPublicParameters());
+            NoncePool.Nonce nonce = noncePool.take();
+            Element b = Helper.power(multipliers.calculateMessageMultiplier(message), nonce.getR());
+            Element a = privateKey.getFirst().mul(b);
+            return new Signature(a, privateKey.getSecond(), nonce.getGr());
+        } finally {
+            Instrumentation.stop(Metrics.Operation.SIGN, start);
+        }
+    }
+
+    protected static void checkNoncePool(NoncePool noncePool, PublicParameters publicParameters) {
+        if(noncePool.getPublicParameters() != publicParameters) {
+            throw new IllegalArgumentException("The nonce pool is for other public parameters.");
+        }
     }
 
     public Signature Sign(String message, PrivateKey privateKey) {
-        return SignGlobal(message, privateKey, publicParameters);
+        return Sign(BitString.fromString(message), privateKey);
+    }
+
+    public Signature Sign(BitString message, PrivateKey privateKey) {
+        return sign(message, privateKey, multipliers, noncePool);
     }
 
     public boolean Verify(String identity, String message, Signature signature) {
-        return VerifyGlobal(publicParameters, pairing, identityLength, messageLength, identity, message, signature);
+        return verifier.verify(identity, message, signature);
+    }
+
+    public boolean Verify(BitString identity, BitString message, Signature signature) {
+        return verifier.verify(identity, message, signature);
+    }
+
+    public boolean[] VerifyBatch(List<SignedMessage> signedMessages) {
+        return verifier.verifyBatch(signedMessages);
     }
 
     public static boolean VerifyGlobal(PublicParameters publicParameters, Pairing pairing, int identityLength, int messageLength,
                                        String identity, String message, Signature signature) {
-        // e(signature[1], g) = e(g2, g1)e(identityMultiplier, signature[2])e(messageMultiplier, signature[3])
+        return VerifyGlobal(publicParameters, pairing, identityLength, messageLength,
+                BitString.fromString(identity), BitString.fromString(message), signature);
+    }
+
+    public static boolean VerifyGlobal(PublicParameters publicParameters, Pairing pairing, int identityLength, int messageLength,
+                                       BitString identity, BitString message, Signature signature) {
         if(identity.length() != identityLength || message.length() != messageLength) {
-            System.err.println((identity.length() != identityLength) ? "Identity length" : "Message length"
-                    + " is not correct.");
+            System.err.println(((identity.length() != identityLength) ? "Identity length" : "Message length") + " is not correct.");
             return false;
         }
-        Element leftSide = pairing.pairing(signature.getFirst(), publicParameters.g);
-
-        Element rightSide_1 = pairing.pairing(publicParameters.g2, publicParameters.g1);
-        Element rightSide_2_1 = calculateIdentityMultiplier(identity, publicParameters);
-        Element rightSide_2 = pairing.pairing(rightSide_2_1, signature.getSecond());
-        Element rightSide_3_1 = calculateMessageMultiplier(message, publicParameters);
-        Element rightSide_3 = pairing.pairing(rightSide_3_1, signature.getThird());
-        Element rightSide = rightSide_1.mul(rightSide_2).mul(rightSide_3);
-        return leftSide.isEqual(rightSide);
+        // The verifier, and so e(g2, g1), is built once per public parameters.
+        return publicParameters.getVerifier(pairing).verify(identity, message, signature);
     }
 
 }
@@ -14,15 +14,15 @@ public class Signature {
     }
 
     public Element getFirst() {
-        return first.getImmutable();
+        return first;
     }
 
     public Element getSecond() {
-        return second.getImmutable();
+        return second;
     }
 
     public Element getThird() {
-        return third.getImmutable();
+        return third;
     }
 
 }
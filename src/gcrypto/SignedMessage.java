@@ -0,0 +1,29 @@
+package gcrypto;
+
+public class SignedMessage {
+    private final BitString identity;
+    private final BitString message;
+    private final Signature signature;
+
+    public SignedMessage(String identity, String message, Signature signature) {
+        this(BitString.fromString(identity), BitString.fromString(message), signature);
+    }
+
+    public SignedMessage(BitString identity, BitString message, Signature signature) {
+        this.identity = identity;
+        this.message = message;
+        this.signature = signature;
+    }
+
+    public BitString getIdentity() {
+        return identity;
+    }
+
+    public BitString getMessage() {
+        return message;
+    }
+
+    public Signature getSignature() {
+        return signature;
+    }
+}
@@ -0,0 +1,395 @@
+package gcrypto;
+
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Verifies signatures under a fixed set of public parameters. Its configuration is immutable, and its precomputed
+ * values are built lazily in a thread-safe way, so it can be shared between threads. It has its own `Multipliers`, so
+ * the multiplier tables and the identity cache of one verifier never change another one with the same parameters.
+ * It only holds public values, so a verifier can be loaded from the encoded public parameters (`load`, `decode`)
+ * without a `Scheme`, which never exposes the master secret to the verifying processes.
+ */
+public class Verifier {
+    private static final ThreadLocal<SecureRandom> rand = ThreadLocal.withInitial(SecureRandom::new);
+    // Bit length of the random exponents used in batch verification.
+    private static final int BATCH_EXPONENT_BITS = 64;
+
+    private final PublicParameters publicParameters;
+    private final Multipliers multipliers;
+    private final Pairing pairing;
+    // Whether the verification equation is checked with a single product of pairings.
+    private final boolean productPairing;
+
+    // e(g2, g1) only depends on the public parameters, so it is computed once.
+    private final Element g2g1;
+    // Precomputed Miller-loop line functions for g, which is an argument of every verification equation.
+    // Built on first use, so that one-off verifications do not pay for it. Building it twice is harmless.
+    private volatile PairingPreProcessing gPairing;
+
+    /**
+     * @param publicParameters public parameters that know their pairing, e.g. the ones returned by `Setup` or decoded
+     *                         with `Codec`.
+     */
+    public Verifier(PublicParameters publicParameters) {
+        this(publicParameters, pairingOf(publicParameters), false);
+    }
+
+    /**
+     * Precomputes the values that are shared by every verification under the given public parameters.
+     * @param publicParameters the public parameters returned by `Setup`.
+     * @param pairing the pairing that the public parameters were generated with.
+     */
+    public Verifier(PublicParameters publicParameters, Pairing pairing) {
+        this(publicParameters, pairing, false);
+    }
+
+    /**
+     * @param productPairing if true, the verification equation is rearranged so that all the pairings share a single
+     *                       Miller loop and final exponentiation.
+     */
+    public Verifier(PublicParameters publicParameters, Pairing pairing, boolean productPairing) {
+        this(new Multipliers(publicParameters), pairing, productPairing);
+    }
+
+    /**
+     * @param multipliers calculates the multipliers of the public parameters, with the tables and the identity cache
+     *                    that this verifier should use.
+     */
+    public Verifier(Multipliers multipliers, Pairing pairing, boolean productPairing) {
+        this(multipliers, pairing, productPairing,
+                pairing.pairing(multipliers.getPublicParameters().g2, multipliers.getPublicParameters().g1).getImmutable(),
+                null);
+        Instrumentation.count(Metrics.Counter.PAIRING);
+    }
+
+    private Verifier(Multipliers multipliers, Pairing pairing, boolean productPairing, Element g2g1,
+                     PairingPreProcessing gPairing) {
+        this.publicParameters = multipliers.getPublicParameters();
+        this.multipliers = multipliers;
+        this.pairing = pairing;
+        this.productPairing = productPairing;
+        this.g2g1 = g2g1;
+        this.gPairing = gPairing;
+    }
+
+    private static Pairing pairingOf(PublicParameters publicParameters) {
+        if(publicParameters.getPairing() == null) {
+            throw new IllegalArgumentException("The pairing of the public parameters is not known.");
+        }
+        return publicParameters.getPairing();
+    }
+
+    /**
+     * Creates a verifier from a file written by `Codec.save`. Like `Codec.loadPublicParameters`, it trusts the file, so
+     * the startup only decodes the points and computes e(g2, g1).
+     */
+    public static Verifier load(Path path) throws IOException {
+        return new Verifier(Codec.loadPublicParameters(path));
+    }
+
+    /**
+     * Creates a verifier from the trusted encoding of the public parameters, as returned by `Codec.encode`.
+     */
+    public static Verifier decode(byte[] publicParameters) {
+        return new Verifier(Codec.decodePublicParameters(publicParameters));
+    }
+
+    /**
+     * Builds everything that is otherwise built on first use, so that the first verifications are as fast as the
+     * others: the pairing preprocessing for g, and the multiplier tables if requested. The tables belong to the
+     * returned verifier, the public parameters are not changed.
+     * @param multiplierTables whether to enable and build the subset-product tables for U and M.
+     * @return this verifier, or a verifier with the tables if this one does not use them.
+     */
+    public Verifier precompute(boolean multiplierTables) {
+        if(gPairing == null) {
+            gPairing = pairing.getPairingPreProcessingFromElement(publicParameters.g);
+        }
+        if(!multiplierTables) {
+            return this;
+        }
+        Verifier verifier = withMultipliers(multipliers.withMultiplierTables(true));
+        verifier.multipliers.getIdentityTable();
+        verifier.multipliers.getMessageTable();
+        return verifier;
+    }
+
+    /**
+     * Returns a verifier for the same public parameters that uses the given verification path. The precomputed values
+     * are shared with this verifier.
+     */
+    public Verifier withProductPairing(boolean productPairing) {
+        if(productPairing == this.productPairing) {
+            return this;
+        }
+        return new Verifier(multipliers, pairing, productPairing, g2g1, this.gPairing);
+    }
+
+    /**
+     * Returns a verifier that calculates the multipliers with the given ones, which must be for the same public
+     * parameters. The other precomputed values are shared with this verifier.
+     */
+    public Verifier withMultipliers(Multipliers multipliers) {
+        if(multipliers.getPublicParameters() != publicParameters) {
+            throw new IllegalArgumentException("The multipliers are for other public parameters.");
+        }
+        if(multipliers == this.multipliers) {
+            return this;
+        }
+        return new Verifier(multipliers, pairing, productPairing, g2g1, this.gPairing);
+    }
+
+    public boolean isProductPairing() {
+        return productPairing;
+    }
+
+    public PublicParameters getPublicParameters() {
+        return publicParameters;
+    }
+
+    public Multipliers getMultipliers() {
+        return multipliers;
+    }
+
+    public Pairing getPairing() {
+        return pairing;
+    }
+
+    /**
+     * Calculates e(a, g) using the precomputed pairing for g.
+     * @param a any element from G.
+     * @return the pairing of a and g.
+     */
+    public Element pairWithG(Element a) {
+        PairingPreProcessing gPairing = this.gPairing;
+        if(gPairing == null) {
+            gPairing = pairing.getPairingPreProcessingFromElement(publicParameters.g);
+            this.gPairing = gPairing;
+        }
+        Instrumentation.count(Metrics.Counter.PAIRING);
+        return gPairing.pairing(a).getImmutable();
+    }
+
+    /**
+     * Precomputes the pairing for any other argument that is paired many times, e.g. the multiplier of a long-lived
+     * identity.
+     * @param fixed the fixed argument.
+     * @return the preprocessed pairing, where `pairing(a)` calculates e(fixed, a).
+     */
+    public PairingPreProcessing preprocess(Element fixed) {
+        return pairing.getPairingPreProcessingFromElement(fixed);
+    }
+
+    public int getIdentityLength() {
+        return publicParameters.U.length;
+    }
+
+    public int getMessageLength() {
+        return publicParameters.M.length;
+    }
+
+    public boolean verify(String identity, String message, Signature signature) {
+        return verify(BitString.fromString(identity), BitString.fromString(message), signature);
+    }
+
+    public boolean verify(BitString identity, BitString message, Signature signature) {
+        long start = Instrumentation.start();
+        try {
+            if(identity.length() != getIdentityLength() || message.length() != getMessageLength()) {
+                System.err.println(((identity.length() != getIdentityLength()) ? "Identity length" : "Message length") + " is not correct.");
+                return false;
+            }
+            return productPairing ? verifyProduct(identity, message, signature) : verifySeparate(identity, message, signature);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.VERIFY, start);
+        }
+    }
+
+    private boolean verifySeparate(BitString identity, BitString message, Signature signature) {
+        // e(signature[1], g) = e(g2, g1)e(identityMultiplier, signature[2])e(messageMultiplier, signature[3])
+        Element leftSide = pairWithG(signature.getFirst());
+
+        // A cached identity is paired with its preprocessed multiplier once it has been verified a few times.
+        IdentityCache.Entry entry = multipliers.getIdentityEntry(identity);
+        Element rightSide_2;
+        if(entry != null) {
+            rightSide_2 = entry.pair(this, signature.getSecond());
+        } else {
+            Element rightSide_2_1 = multipliers.calculateIdentityMultiplier(identity);
+            rightSide_2 = pairing.pairing(rightSide_2_1, signature.getSecond());
+            Instrumentation.count(Metrics.Counter.PAIRING);
+        }
+        Element rightSide_3_1 = multipliers.calculateMessageMultiplier(message);
+        Element rightSide_3 = pairing.pairing(rightSide_3_1, signature.getThird());
+        Instrumentation.count(Metrics.Counter.PAIRING);
+        Element rightSide = g2g1.mul(rightSide_2).mul(rightSide_3);
+        return leftSide.isEqual(rightSide);
+    }
+
+    private boolean verifyProduct(BitString identity, BitString message, Signature signature) {
+        // e(signature[1], g)e(identityMultiplier, signature[2]^-1)e(messageMultiplier, signature[3]^-1) = e(g2, g1)
+        Element[] in1 = new Element[] {
+                signature.getFirst(),
+                multipliers.calculateIdentityMultiplier(identity),
+                multipliers.calculateMessageMultiplier(message)
+        };
+        Element[] in2 = new Element[] {
+                publicParameters.g,
+                signature.getSecond().invert(),
+                signature.getThird().invert()
+        };
+        // A product pairing is counted as one pairing per pair of arguments.
+        Instrumentation.count(Metrics.Counter.PAIRING, in1.length);
+        return pairing.pairing(in1, in2).isEqual(g2g1);
+    }
+
+    /**
+     * Verifies many signatures at once. Every verification equation is raised to a small random exponent and all of
+     * them are combined into a single equation, using multi-exponentiations. Signatures that share an identity or a
+     * message share their pairings, and the pairing with g is computed once for the whole batch. If the combined
+     * check fails, the batch is split in halves until the invalid signatures are found.
+     * Please note that the signature elements are assumed to be in G.
+     * @param signedMessages the (identity, message, signature) tuples to verify.
+     * @return the result for each tuple, in the given order.
+     */
+    public boolean[] verifyBatch(List<SignedMessage> signedMessages) {
+        long start = Instrumentation.start();
+        try {
+            boolean[] results = new boolean[signedMessages.size()];
+            List<Integer> indexes = new ArrayList<>();
+            for(int i = 0; i < signedMessages.size(); i++) {
+                SignedMessage signedMessage = signedMessages.get(i);
+                if(signedMessage.getIdentity().length() != getIdentityLength()
+                        || signedMessage.getMessage().length() != getMessageLength()) {
+                    System.err.println("Length of the signed message " + i + " is not correct.");
+                    continue;
+                }
+                indexes.add(i);
+            }
+            verifyBatch(signedMessages, indexes, results);
+            return results;
+        } finally {
+            Instrumentation.stop(Metrics.Operation.VERIFY_BATCH, start);
+        }
+    }
+
+    private void verifyBatch(List<SignedMessage> signedMessages, List<Integer> indexes, boolean[] results) {
+        if(indexes.isEmpty()) {
+            return;
+        }
+        if(indexes.size() == 1) {
+            SignedMessage signedMessage = signedMessages.get(indexes.get(0));
+            results[indexes.get(0)] = verify(signedMessage.getIdentity(), signedMessage.getMessage(),
+                    signedMessage.getSignature());
+            return;
+        }
+        if(checkBatch(signedMessages, indexes)) {
+            for(int i : indexes) {
+                results[i] = true;
+            }
+            return;
+        }
+        // Divide and conquer to find the invalid signatures.
+        int half = indexes.size() / 2;
+        verifyBatch(signedMessages, indexes.subList(0, half), results);
+        verifyBatch(signedMessages, indexes.subList(half, indexes.size()), results);
+    }
+
+    private boolean checkBatch(List<SignedMessage> signedMessages, List<Integer> indexes) {
+        // prod(e(signature_i[1], g)^d_i) = e(g2, g1)^sum(d_i) prod(e(identityMultiplier_i, signature_i[2])^d_i)
+        //                                  prod(e(messageMultiplier_i, signature_i[3])^d_i)
+        // where d_i are random exponents.
+        int size = indexes.size();
+        BigInteger[] exponents = new BigInteger[size];
+        Element[] firsts = new Element[size];
+        BigInteger exponentSum = BigInteger.ZERO;
+        Map<BitString, List<Integer>> identityGroups = new LinkedHashMap<>();
+        Map<BitString, List<Integer>> messageGroups = new LinkedHashMap<>();
+        for(int k = 0; k < size; k++) {
+            SignedMessage signedMessage = signedMessages.get(indexes.get(k));
+            exponents[k] = chooseBatchExponent();
+            exponentSum = exponentSum.add(exponents[k]);
+            firsts[k] = signedMessage.getSignature().getFirst();
+            identityGroups.computeIfAbsent(signedMessage.getIdentity(), key -> new ArrayList<>()).add(k);
+            messageGroups.computeIfAbsent(signedMessage.getMessage(), key -> new ArrayList<>()).add(k);
+        }
+        // prod(e(signature_i[1], g)^d_i) = e(prod(signature_i[1]^d_i), g)
+        Element leftSide = pairWithG(Helper.multiPower(firsts, exponents));
+
+        // Signatures that share an identity (or a message) share a single pairing, where the random exponents are
+        // moved into G. The remaining pairings are raised to their random exponents in GT, which is cheaper.
+        List<Element> in1 = new ArrayList<>();
+        List<Element> in2 = new ArrayList<>();
+        Element[] singles = new Element[size];
+        for(Map.Entry<BitString, List<Integer>> group : identityGroups.entrySet()) {
+            Element multiplier = multipliers.calculateIdentityMultiplier(group.getKey());
+            addGroup(multiplier, group.getValue(), signedMessages, indexes, exponents, Signature::getSecond, in1, in2, singles);
+        }
+        for(Map.Entry<BitString, List<Integer>> group : messageGroups.entrySet()) {
+            Element multiplier = multipliers.calculateMessageMultiplier(group.getKey());
+            addGroup(multiplier, group.getValue(), signedMessages, indexes, exponents, Signature::getThird, in1, in2, singles);
+        }
+        List<Element> singleBases = new ArrayList<>();
+        List<BigInteger> singleExponents = new ArrayList<>();
+        singleBases.add(g2g1);
+        singleExponents.add(exponentSum.mod(publicParameters.G.getOrder()));
+        for(int k = 0; k < size; k++) {
+            if(singles[k] != null) {
+                singleBases.add(singles[k]);
+                singleExponents.add(exponents[k]);
+            }
+        }
+        Element rightSide = Helper.multiPower(singleBases.toArray(new Element[0]), singleExponents.toArray(new BigInteger[0]));
+        if(!in1.isEmpty()) {
+            Instrumentation.count(Metrics.Counter.PAIRING, in1.size());
+            rightSide = rightSide.mul(pairing.pairing(in1.toArray(new Element[0]), in2.toArray(new Element[0])));
+        }
+        return leftSide.isEqual(rightSide);
+    }
+
+    /**
+     * Adds e(multiplier, prod(signature_i[part]^d_i)) to the product of pairings if the group has more than one
+     * signature. Otherwise, e(multiplier, signature_i[part]) is multiplied into the single pairing of the signature.
+     */
+    private void addGroup(Element multiplier, List<Integer> group, List<SignedMessage> signedMessages,
+                          List<Integer> indexes, BigInteger[] exponents, Function<Signature, Element> part,
+                          List<Element> in1, List<Element> in2, Element[] singles) {
+        if(group.size() == 1) {
+            int k = group.get(0);
+            Instrumentation.count(Metrics.Counter.PAIRING);
+            Element single = pairing.pairing(multiplier, part.apply(signedMessages.get(indexes.get(k)).getSignature()));
+            singles[k] = (singles[k] == null) ? single.getImmutable() : singles[k].mul(single);
+            return;
+        }
+        Element[] bases = new Element[group.size()];
+        BigInteger[] groupExponents = new BigInteger[group.size()];
+        for(int j = 0; j < group.size(); j++) {
+            int k = group.get(j);
+            bases[j] = part.apply(signedMessages.get(indexes.get(k)).getSignature());
+            groupExponents[j] = exponents[k];
+        }
+        in1.add(multiplier);
+        in2.add(Helper.multiPower(bases, groupExponents));
+    }
+
+    // Returns a random non-zero exponent for batch verification.
+    private static BigInteger chooseBatchExponent() {
+        BigInteger exponent;
+        do {
+            exponent = new BigInteger(BATCH_EXPONENT_BITS, rand.get());
+        } while(exponent.signum() == 0);
+        return exponent;
+    }
+}
@@ -31,6 +31,10 @@ public class DistributedKeys {
         return this.verificationKeys[server-1];
     }
 
+    public int getServerCount() {
+        return this.verificationKeys.length;
+    }
+
     public Element[] getY() {
         return Y;
     }
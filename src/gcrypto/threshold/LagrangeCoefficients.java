@@ -0,0 +1,103 @@
+package gcrypto.threshold;
+
+import gcrypto.LruCache;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Calculates the Lagrange coefficients for interpolating at x = 0 in Z_p, and caches them per set of servers, since the
+ * same quorums are used over and over.
+ */
+public class LagrangeCoefficients {
+    public static final int CACHE_CAPACITY = 1024;
+
+    private static final LruCache<Quorum, BigInteger[]> cache = new LruCache<>(CACHE_CAPACITY);
+
+    /**
+     * Returns the coefficients for the given servers, using the cache.
+     * @param servers distinct server indexes in [1, p).
+     * @param p the order of the group.
+     * @return the coefficient of each server, in the given order.
+     */
+    public static BigInteger[] get(int[] servers, BigInteger p) {
+        int[] sorted = servers.clone();
+        Arrays.sort(sorted);
+        BigInteger[] sortedCoefficients = cache.get(new Quorum(sorted, p), quorum -> compute(quorum.servers, p));
+        BigInteger[] coefficients = new BigInteger[servers.length];
+        for(int i = 0; i < servers.length; i++) {
+            coefficients[i] = sortedCoefficients[Arrays.binarySearch(sorted, servers[i])];
+        }
+        return coefficients;
+    }
+
+    /**
+     * Calculates lambda_k = prod(j / (j - k)) mod p over the servers j != k, for every server k.
+     * The numerator is shared, but every denominator is a product over the other servers, so building them takes O(t^2)
+     * multiplications. Only the divisions are batched, into a single modular inversion for all the servers.
+     * @param servers distinct server indexes in [1, p).
+     * @param p the order of the group.
+     * @return the coefficient of each server, in the given order.
+     */
+    public static BigInteger[] compute(int[] servers, BigInteger p) {
+        int t = servers.length;
+        // lambda_k = (prod(j)) / (k * prod(j - k)), so only the denominators depend on k.
+        BigInteger numerator = BigInteger.ONE;
+        BigInteger[] denominators = new BigInteger[t];
+        for(int i = 0; i < t; i++) {
+            if(servers[i] < 1) {
+                throw new IllegalArgumentException("Server indexes must be positive.");
+            }
+            numerator = numerator.multiply(BigInteger.valueOf(servers[i])).mod(p);
+            BigInteger denominator = BigInteger.valueOf(servers[i]);
+            for(int j = 0; j < t; j++) {
+                if(i == j) continue;
+                denominator = denominator.multiply(BigInteger.valueOf(servers[j] - servers[i])).mod(p);
+            }
+            if(denominator.signum() == 0) {
+                throw new IllegalArgumentException("Server indexes must be distinct.");
+            }
+            denominators[i] = denominator;
+        }
+        // Batched inversion: prefix[i] = denominators[0] * ... * denominators[i-1].
+        BigInteger[] prefix = new BigInteger[t + 1];
+        prefix[0] = BigInteger.ONE;
+        for(int i = 0; i < t; i++) {
+            prefix[i+1] = prefix[i].multiply(denominators[i]).mod(p);
+        }
+        // inverse = (denominators[0] * ... * denominators[i])^-1, going backwards.
+        BigInteger inverse = prefix[t].modInverse(p);
+        BigInteger[] coefficients = new BigInteger[t];
+        for(int i = t - 1; i >= 0; i--) {
+            coefficients[i] = numerator.multiply(inverse).multiply(prefix[i]).mod(p);
+            inverse = inverse.multiply(denominators[i]).mod(p);
+        }
+        return coefficients;
+    }
+
+    public static LruCache<?, ?> getCache() {
+        return cache;
+    }
+
+    private static final class Quorum {
+        private final int[] servers;
+        private final BigInteger p;
+
+        private Quorum(int[] servers, BigInteger p) {
+            this.servers = servers;
+            this.p = p;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Quorum)) return false;
+            Quorum other = (Quorum) o;
+            return Arrays.equals(servers, other.servers) && p.equals(other.p);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(servers) + p.hashCode();
+        }
+    }
+}
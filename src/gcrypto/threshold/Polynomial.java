@@ -16,14 +16,37 @@ public class Polynomial {
     }
 
     public BigInteger compute(BigInteger x) {
-        BigInteger result = coefficients[0];
-        BigInteger x_i = x;
-        for(int i = 1; i < coefficients.length; i++) {
-            // result += parameter * x^i
-            result = result.add(coefficients[i].multiply(x_i));
-            x_i = x_i.multiply(x);
+        // Horner's rule: (...((a(t-1))x + a(t-2))x + ...)x + a0, reduced at every step so that the intermediate
+        // values never grow beyond p^2.
+        BigInteger result = BigInteger.ZERO;
+        for(int i = coefficients.length - 1; i >= 0; i--) {
+            result = result.multiply(x).add(coefficients[i]).mod(p);
         }
-        return result.mod(p);
+        return result;
+    }
+
+    /**
+     * Evaluates the polynomial at every given point.
+     * @return the values, in the order of the points.
+     */
+    public BigInteger[] compute(BigInteger[] xs) {
+        BigInteger[] results = new BigInteger[xs.length];
+        for(int i = 0; i < xs.length; i++) {
+            results[i] = compute(xs[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates the polynomial at x = 1, 2, ..., n, i.e. at every server index.
+     * @return the values, where the value at x is at index x - 1.
+     */
+    public BigInteger[] computeAll(int n) {
+        BigInteger[] xs = new BigInteger[n];
+        for(int x = 1; x <= n; x++) {
+            xs[x-1] = BigInteger.valueOf(x);
+        }
+        return compute(xs);
     }
 
     public BigInteger getCoefficient(int index) {
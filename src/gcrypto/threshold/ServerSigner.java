@@ -0,0 +1,146 @@
+package gcrypto.threshold;
+
+import gcrypto.BitString;
+import gcrypto.Helper;
+import gcrypto.Instrumentation;
+import gcrypto.Metrics;
+import gcrypto.MultiplierTable;
+import gcrypto.Multipliers;
+import gcrypto.NoncePool;
+import gcrypto.PublicParameters;
+import it.unisa.dia.gas.jpbc.Element;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Signs the shares of a single server for a single identity. The identity term identityMultiplier^f(k) of
+ * `ThrSigIndividual` does not depend on the message, so it is computed once, and every share then costs one
+ * exponentiation of the message multiplier and one fixed-base exponentiation of g.
+ * It is immutable, so a server can sign from many threads with the same signer.
+ */
+public class ServerSigner {
+    private final PublicParameters publicParameters;
+    private final Multipliers multipliers;
+    private final int server;
+    private final BitString identity;
+    // identityMultiplier^f(k)
+    private final Element identityTerm;
+    // Subset-product table for m' and M, or null to calculate the message multipliers with `multipliers`.
+    private final MultiplierTable messageTable;
+
+    /**
+     * @param server the index of the server in [1, servers].
+     * @param multiplierTable whether the signer builds its own subset-product table for the message multipliers.
+     */
+    public ServerSigner(int server, BitString identity, DistributedKeys distributedKeys,
+                        PublicParameters publicParameters, boolean multiplierTable) {
+        this(server, identity, distributedKeys, new Multipliers(publicParameters),
+                multiplierTable ? new MultiplierTable(publicParameters.mPrime, publicParameters.M) : null);
+    }
+
+    public ServerSigner(int server, BitString identity, DistributedKeys distributedKeys,
+                        PublicParameters publicParameters) {
+        this(server, identity, distributedKeys, publicParameters, false);
+    }
+
+    /**
+     * Calculates the multipliers with the tables and the identity cache of the given multipliers, e.g. the ones of a
+     * scheme.
+     */
+    public ServerSigner(int server, BitString identity, DistributedKeys distributedKeys, Multipliers multipliers) {
+        this(server, identity, distributedKeys, multipliers, null);
+    }
+
+    private ServerSigner(int server, BitString identity, DistributedKeys distributedKeys, Multipliers multipliers,
+                         MultiplierTable messageTable) {
+        this.publicParameters = multipliers.getPublicParameters();
+        this.multipliers = multipliers;
+        this.server = server;
+        this.identity = identity;
+        this.identityTerm = multipliers.powerIdentityMultiplier(identity, distributedKeys.getPrivateKey(server))
+                .getImmutable();
+        this.messageTable = messageTable;
+        // Build the fixed-base table for g now, rather than on the first share.
+        publicParameters.getGPowPreProcessing();
+    }
+
+    public int getServer() {
+        return server;
+    }
+
+    public BitString getIdentity() {
+        return identity;
+    }
+
+    public SignatureShare sign(String message) {
+        return sign(BitString.fromString(message));
+    }
+
+    /**
+     * Calculates the same share as `ThresholdScheme.ThrSigIndividual`.
+     */
+    public SignatureShare sign(BitString message) {
+        return sign(calculateMessageMultiplier(message), null);
+    }
+
+    /**
+     * Same as above, but takes r_k and g^r_k from the pool, so only the power of the message multiplier is
+     * calculated online.
+     */
+    public SignatureShare sign(BitString message, NoncePool noncePool) {
+        return sign(calculateMessageMultiplier(message), noncePool);
+    }
+
+    /**
+     * Signs many messages at once. The message multiplier of a message that appears more than once is only
+     * calculated once, but every share gets its own r_k.
+     * @return the shares, in the order of the messages.
+     */
+    public List<SignatureShare> signAll(List<BitString> messages) {
+        return signAll(messages, null);
+    }
+
+    /**
+     * Same as above, but takes the nonces from the pool if it is not null.
+     */
+    public List<SignatureShare> signAll(List<BitString> messages, NoncePool noncePool) {
+        Map<BitString, Element> messageMultipliers = new HashMap<>();
+        List<SignatureShare> signatureShares = new ArrayList<>(messages.size());
+        for(BitString message : messages) {
+            Element messageMultiplier = messageMultipliers.computeIfAbsent(message, this::calculateMessageMultiplier);
+            signatureShares.add(sign(messageMultiplier, noncePool));
+        }
+        return signatureShares;
+    }
+
+    private SignatureShare sign(Element messageMultiplier, NoncePool noncePool) {
+        long start = Instrumentation.start();
+        try {
+            if(noncePool != null) {
+                if(noncePool.getPublicParameters() != publicParameters) {
+                    throw new IllegalArgumentException("The nonce pool is for other public parameters.");
+                }
+                NoncePool.Nonce nonce = noncePool.take();
+                Element first = identityTerm.mul(Helper.power(messageMultiplier, nonce.getR())).getImmutable();
+                return new SignatureShare(nonce.getR(), first, nonce.getGr());
+            }
+            BigInteger r_k = ThresholdScheme.chooseNonce(publicParameters.G.getOrder());
+            Element first = identityTerm.mul(Helper.power(messageMultiplier, r_k)).getImmutable();
+            Element second = Helper.power(publicParameters.getGPowPreProcessing(), r_k);
+            return new SignatureShare(r_k, first, second);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.THR_SIG, start);
+        }
+    }
+
+    private Element calculateMessageMultiplier(BitString message) {
+        if(messageTable != null) {
+            return messageTable.calculate(message);
+        }
+        return multipliers.calculateMessageMultiplier(message);
+    }
+}
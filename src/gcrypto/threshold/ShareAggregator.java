@@ -0,0 +1,197 @@
+package gcrypto.threshold;
+
+import gcrypto.BitString;
+import gcrypto.PublicParameters;
+import gcrypto.Signature;
+import gcrypto.Verifier;
+import it.unisa.dia.gas.jpbc.Element;
+
+/**
+ * Collects the signature shares of a single (identity, message) request as they arrive, and reconstructs the signature
+ * as soon as `threshold` shares are accepted. Only the accepted shares are kept, and they are released once the
+ * signature is reconstructed. It is thread-safe, so shares can be added from many threads.
+ */
+public class ShareAggregator {
+    private final BitString message;
+    private final int threshold;
+    private final DistributedKeys distributedKeys;
+    private final PublicParameters publicParameters;
+    // Checks the shares if not null, on arrival or once there are `threshold` of them.
+    private final ShareVerifier shareVerifier;
+    private final boolean verifyOnArrival;
+    private volatile Element messageMultiplier;
+
+    private int[] servers;
+    private SignatureShare[] signatureShares;
+    private int count = 0;
+    private int rejected = 0;
+    private Signature signature;
+
+    /**
+     * Accepts every share without checking it.
+     */
+    public ShareAggregator(BitString message, int threshold, DistributedKeys distributedKeys,
+                           PublicParameters publicParameters) {
+        this(message, threshold, distributedKeys, publicParameters, null, false);
+    }
+
+    /**
+     * Only accepts the shares that are valid for their servers, and checks every share on arrival.
+     */
+    public ShareAggregator(BitString message, int threshold, DistributedKeys distributedKeys,
+                           ShareVerifier shareVerifier) {
+        this(message, threshold, distributedKeys, shareVerifier, true);
+    }
+
+    /**
+     * Only accepts the shares that are valid for their servers.
+     * @param verifyOnArrival whether to check every share on arrival, or to check the `threshold` held shares in a
+     * single batch once there are enough of them. The invalid ones are evicted then, and the aggregator waits for
+     * others. The batch costs about two pairings instead of two per share, unless some of the shares are invalid.
+     */
+    public ShareAggregator(BitString message, int threshold, DistributedKeys distributedKeys,
+                           ShareVerifier shareVerifier, boolean verifyOnArrival) {
+        this(message, threshold, distributedKeys, shareVerifier.getVerifier().getPublicParameters(), shareVerifier,
+                verifyOnArrival);
+    }
+
+    private ShareAggregator(BitString message, int threshold, DistributedKeys distributedKeys,
+                            PublicParameters publicParameters, ShareVerifier shareVerifier, boolean verifyOnArrival) {
+        this.message = message;
+        this.threshold = threshold;
+        this.distributedKeys = distributedKeys;
+        this.publicParameters = publicParameters;
+        this.shareVerifier = shareVerifier;
+        this.verifyOnArrival = verifyOnArrival;
+        this.servers = new int[threshold];
+        this.signatureShares = new SignatureShare[threshold];
+    }
+
+    /**
+     * Adds the share of a server. Shares of servers that were already accepted, invalid shares and the shares that
+     * arrive after the signature is reconstructed are ignored. If the shares are checked once there are enough of
+     * them, the batch is checked while holding the lock, and the invalid shares are evicted whichever order they
+     * arrived in.
+     * @param server the index of the server in [1, servers].
+     * @return the reconstructed signature if this share completes it, otherwise null.
+     */
+    public Signature add(int server, SignatureShare signatureShare) {
+        if(server < 1 || server > distributedKeys.getServerCount() || signatureShare == null) {
+            System.err.println("Invalid signature share from server " + server + ".");
+            synchronized(this) {
+                rejected++;
+            }
+            return null;
+        }
+        synchronized(this) {
+            if(signature != null || contains(server)) {
+                return null;
+            }
+        }
+        // The pairings are calculated outside the lock, so that shares can be checked concurrently.
+        if(shareVerifier != null && verifyOnArrival && !isValid(server, signatureShare)) {
+            synchronized(this) {
+                rejected++;
+            }
+            return null;
+        }
+        synchronized(this) {
+            if(signature != null || contains(server)) {
+                return null;
+            }
+            servers[count] = server;
+            signatureShares[count] = signatureShare;
+            count++;
+            if(count < threshold) {
+                return null;
+            }
+            if(shareVerifier != null && !verifyOnArrival && evictInvalid(shareVerifier) > 0) {
+                return null;
+            }
+            Signature reconstructed = ThresholdScheme.Reconstruct(servers, signatureShares, distributedKeys.getY(), publicParameters);
+            if(reconstructed == null) {
+                // Find the shares that are to blame, even without a verifier, and wait for others.
+                if(evictInvalid((shareVerifier != null) ? shareVerifier : new ShareVerifier(new Verifier(publicParameters))) == 0) {
+                    count--;
+                    signatureShares[count] = null;
+                    rejected++;
+                }
+                return null;
+            }
+            signature = reconstructed;
+            servers = null;
+            signatureShares = null;
+            return signature;
+        }
+    }
+
+    private boolean isValid(int server, SignatureShare signatureShare) {
+        return shareVerifier.verifyShare(distributedKeys.getVerificationKey(server), signatureShare, getMessageMultiplier());
+    }
+
+    /**
+     * Checks the held shares in a batch, and removes the invalid ones.
+     * @return the number of removed shares.
+     */
+    private int evictInvalid(ShareVerifier shareVerifier) {
+        boolean[] valid = shareVerifier.verifyShares(servers, signatureShares, message, distributedKeys);
+        int kept = 0;
+        for(int i = 0; i < count; i++) {
+            if(valid[i]) {
+                servers[kept] = servers[i];
+                signatureShares[kept] = signatureShares[i];
+                kept++;
+            }
+        }
+        int evicted = count - kept;
+        for(int i = kept; i < count; i++) {
+            servers[i] = 0;
+            signatureShares[i] = null;
+        }
+        count = kept;
+        rejected += evicted;
+        return evicted;
+    }
+
+    private boolean contains(int server) {
+        for(int i = 0; i < count; i++) {
+            if(servers[i] == server) return true;
+        }
+        return false;
+    }
+
+    private Element getMessageMultiplier() {
+        Element messageMultiplier = this.messageMultiplier;
+        if(messageMultiplier == null) {
+            messageMultiplier = shareVerifier.getVerifier().getMultipliers().calculateMessageMultiplier(message);
+            this.messageMultiplier = messageMultiplier;
+        }
+        return messageMultiplier;
+    }
+
+    public BitString getMessage() {
+        return message;
+    }
+
+    public synchronized boolean isComplete() {
+        return signature != null;
+    }
+
+    /**
+     * @return the reconstructed signature, or null if there are not enough shares yet.
+     */
+    public synchronized Signature getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return the number of accepted shares.
+     */
+    public synchronized int getShareCount() {
+        return count;
+    }
+
+    public synchronized int getRejectedCount() {
+        return rejected;
+    }
+}
@@ -0,0 +1,124 @@
+package gcrypto.threshold;
+
+import gcrypto.BitString;
+import gcrypto.LruCache;
+import gcrypto.PublicParameters;
+import gcrypto.Signature;
+
+import java.util.function.Function;
+
+/**
+ * Keeps a `ShareAggregator` for every in-flight (identity, message) request of a combiner. The number of requests is
+ * bounded, and the least recently active request is dropped once the capacity is reached, so the memory use does not
+ * depend on how many requests are abandoned. It is thread-safe.
+ */
+public class ShareCombiner {
+    private final PublicParameters publicParameters;
+    private final ShareVerifier shareVerifier;
+    private final int threshold;
+    private final Function<BitString, DistributedKeys> distributedKeys;
+    private final LruCache<Request, ShareAggregator> requests;
+
+    /**
+     * Accepts every share without checking it.
+     * @param capacity the maximum number of requests that are kept.
+     * @param distributedKeys returns the distributed keys of an identity.
+     */
+    public ShareCombiner(PublicParameters publicParameters, int threshold, int capacity,
+                         Function<BitString, DistributedKeys> distributedKeys) {
+        this(publicParameters, null, threshold, capacity, distributedKeys);
+    }
+
+    /**
+     * Only accepts the shares that are valid for their servers.
+     */
+    public ShareCombiner(ShareVerifier shareVerifier, int threshold, int capacity,
+                         Function<BitString, DistributedKeys> distributedKeys) {
+        this(shareVerifier.getVerifier().getPublicParameters(), shareVerifier, threshold, capacity, distributedKeys);
+    }
+
+    private ShareCombiner(PublicParameters publicParameters, ShareVerifier shareVerifier, int threshold, int capacity,
+                          Function<BitString, DistributedKeys> distributedKeys) {
+        this.publicParameters = publicParameters;
+        this.shareVerifier = shareVerifier;
+        this.threshold = threshold;
+        this.distributedKeys = distributedKeys;
+        this.requests = new LruCache<>(capacity);
+    }
+
+    /**
+     * Adds the share of a server to its request. Completed requests are kept until they are evicted, so that late
+     * shares do not start them again.
+     * A share that cannot be handled, e.g. because the keys of its identity are not found, is rejected, and the other
+     * shares are still accepted.
+     * @return the reconstructed signature if this share completes the request, otherwise null.
+     */
+    public Signature add(BitString identity, BitString message, int server, SignatureShare signatureShare) {
+        try {
+            ShareAggregator aggregator = requests.get(new Request(identity, message), request -> {
+                DistributedKeys keys = distributedKeys.apply(request.identity);
+                if(keys == null) {
+                    throw new IllegalArgumentException("The distributed keys of the identity are not known.");
+                }
+                return (shareVerifier != null)
+                        ? new ShareAggregator(request.message, threshold, keys, shareVerifier)
+                        : new ShareAggregator(request.message, threshold, keys, publicParameters);
+            });
+            return aggregator.add(server, signatureShare);
+        } catch(RuntimeException e) {
+            System.err.println("The signature share of server " + server + " is rejected: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the aggregator of the request, or null if the request is not in flight.
+     */
+    public ShareAggregator getAggregator(BitString identity, BitString message) {
+        return requests.getIfPresent(new Request(identity, message));
+    }
+
+    /**
+     * Drops a request, e.g. once its signature is delivered.
+     */
+    public void remove(BitString identity, BitString message) {
+        requests.remove(new Request(identity, message));
+    }
+
+    public int size() {
+        return requests.size();
+    }
+
+    public int getCapacity() {
+        return requests.getCapacity();
+    }
+
+    /**
+     * @return the number of requests that were dropped because the combiner was full.
+     */
+    public long getEvictions() {
+        return requests.getEvictions();
+    }
+
+    private static final class Request {
+        private final BitString identity;
+        private final BitString message;
+
+        private Request(BitString identity, BitString message) {
+            this.identity = identity;
+            this.message = message;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Request)) return false;
+            Request other = (Request) o;
+            return identity.equals(other.identity) && message.equals(other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * identity.hashCode() + message.hashCode();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package gcrypto.threshold;
+
+import gcrypto.BitString;
+import gcrypto.Helper;
+import gcrypto.Instrumentation;
+import gcrypto.Metrics;
+import gcrypto.PublicParameters;
+import gcrypto.Verifier;
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.plaf.jpbc.field.curve.CurveElement;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks signature shares against the verification keys of their servers, so that a combiner can find the faulty
+ * servers before reconstructing. It only holds a verifier, so it is immutable and can be shared between threads.
+ */
+public class ShareVerifier {
+    private static final ThreadLocal<SecureRandom> rand = ThreadLocal.withInitial(SecureRandom::new);
+    // Bit length of the random exponents used in batch verification.
+    private static final int BATCH_EXPONENT_BITS = 64;
+
+    private final Verifier verifier;
+    private final PublicParameters publicParameters;
+
+    public ShareVerifier(Verifier verifier) {
+        this.verifier = verifier;
+        this.publicParameters = verifier.getPublicParameters();
+    }
+
+    public Verifier getVerifier() {
+        return verifier;
+    }
+
+    /**
+     * Checks e(share[1], g) = verificationKey_k * e(messageMultiplier, share[2]).
+     * @param server the index of the server in [1, servers].
+     * @return true if the share is valid for the server and the message. A missing (null) share is invalid.
+     * @throws IllegalArgumentException if the server is not one of the distributed keys, or the share is not from the
+     * group of the public parameters.
+     */
+    public boolean verifyShare(int server, SignatureShare signatureShare, BitString message,
+                               DistributedKeys distributedKeys) {
+        long start = Instrumentation.start();
+        try {
+            checkServer(server, distributedKeys);
+            if(signatureShare == null) {
+                return false;
+            }
+            Element messageMultiplier = verifier.getMultipliers().calculateMessageMultiplier(message);
+            return verifyShare(distributedKeys.getVerificationKey(server), signatureShare, messageMultiplier);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.VERIFY_SHARE, start);
+        }
+    }
+
+    /**
+     * Same as above, with the verification key of the server and the message multiplier.
+     * @throws IllegalArgumentException if the verification key is null or not in GT, or the share is not from G.
+     */
+    boolean verifyShare(Element verificationKey, SignatureShare signatureShare, Element messageMultiplier) {
+        checkVerificationKey(verificationKey);
+        checkShare(signatureShare);
+        if(!isPairable(signatureShare.getFirst()) || !isPairable(signatureShare.getSecond())) {
+            return false;
+        }
+        Element leftSide = verifier.pairWithG(signatureShare.getFirst());
+        Element rightSide = verificationKey.mul(pair(messageMultiplier, signatureShare.getSecond()));
+        return leftSide.isEqual(rightSide);
+    }
+
+    /**
+     * Checks the shares of the same message together. Every share equation is raised to a small random exponent, so
+     * that all of them are checked with
+     * e(prod(share_k[1]^d_k), g) = prod(verificationKey_k^d_k) * e(messageMultiplier, prod(share_k[2]^d_k)).
+     * If the combined check fails, the shares are split in halves until the faulty servers are found.
+     * @param servers the indexes of the servers, in the order of the shares.
+     * @return the result for each share, in the given order. Missing (null) shares are invalid.
+     * @throws IllegalArgumentException if a server is not one of the distributed keys, or a share is not from the
+     * group of the public parameters.
+     */
+    public boolean[] verifyShares(int[] servers, SignatureShare[] signatureShares, BitString message,
+                                  DistributedKeys distributedKeys) {
+        long start = Instrumentation.start();
+        try {
+            boolean[] results = new boolean[servers.length];
+            List<Integer> indexes = new ArrayList<>();
+            for(int i = 0; i < servers.length; i++) {
+                checkServer(servers[i], distributedKeys);
+                if(signatureShares[i] == null) {
+                    continue;
+                }
+                checkShare(signatureShares[i]);
+                // A share that cannot be paired would make the combined check fail, so it is rejected on its own.
+                if(isPairable(signatureShares[i].getFirst()) && isPairable(signatureShares[i].getSecond())) {
+                    indexes.add(i);
+                }
+            }
+            Element messageMultiplier = verifier.getMultipliers().calculateMessageMultiplier(message);
+            verifyShares(servers, signatureShares, distributedKeys, messageMultiplier, indexes, results);
+            return results;
+        } finally {
+            Instrumentation.stop(Metrics.Operation.VERIFY_SHARES, start);
+        }
+    }
+
+    private void verifyShares(int[] servers, SignatureShare[] signatureShares, DistributedKeys distributedKeys,
+                              Element messageMultiplier, List<Integer> indexes, boolean[] results) {
+        if(indexes.isEmpty()) {
+            return;
+        }
+        if(indexes.size() == 1) {
+            int i = indexes.get(0);
+            results[i] = verifyShare(distributedKeys.getVerificationKey(servers[i]), signatureShares[i], messageMultiplier);
+            return;
+        }
+        if(checkShares(servers, signatureShares, distributedKeys, messageMultiplier, indexes)) {
+            for(int i : indexes) {
+                results[i] = true;
+            }
+            return;
+        }
+        // Divide and conquer to find the faulty servers.
+        int half = indexes.size() / 2;
+        verifyShares(servers, signatureShares, distributedKeys, messageMultiplier, indexes.subList(0, half), results);
+        verifyShares(servers, signatureShares, distributedKeys, messageMultiplier, indexes.subList(half, indexes.size()), results);
+    }
+
+    private boolean checkShares(int[] servers, SignatureShare[] signatureShares, DistributedKeys distributedKeys,
+                                Element messageMultiplier, List<Integer> indexes) {
+        int size = indexes.size();
+        BigInteger[] exponents = new BigInteger[size];
+        Element[] firsts = new Element[size];
+        Element[] seconds = new Element[size];
+        Element[] verificationKeys = new Element[size];
+        for(int k = 0; k < size; k++) {
+            int i = indexes.get(k);
+            exponents[k] = chooseBatchExponent();
+            firsts[k] = signatureShares[i].getFirst();
+            seconds[k] = signatureShares[i].getSecond();
+            verificationKeys[k] = distributedKeys.getVerificationKey(servers[i]);
+        }
+        Element first = Helper.multiPower(firsts, exponents);
+        Element second = Helper.multiPower(seconds, exponents);
+        // The points of order 2 of the shares can add up to one that cannot be paired. The halves are checked then.
+        if(!isPairable(first) || !isPairable(second)) {
+            return false;
+        }
+        Element leftSide = verifier.pairWithG(first);
+        Element rightSide = Helper.multiPower(verificationKeys, exponents).mul(pair(messageMultiplier, second));
+        return leftSide.isEqual(rightSide);
+    }
+
+    private static void checkServer(int server, DistributedKeys distributedKeys) {
+        if(server < 1 || server > distributedKeys.getServerCount()) {
+            throw new IllegalArgumentException("Server " + server + " is not one of the "
+                    + distributedKeys.getServerCount() + " servers.");
+        }
+    }
+
+    private void checkVerificationKey(Element verificationKey) {
+        if(verificationKey == null || !isFrom(verificationKey, publicParameters.GT)) {
+            throw new IllegalArgumentException("The verification key is not an element of GT.");
+        }
+    }
+
+    private void checkShare(SignatureShare signatureShare) {
+        if(!isFrom(signatureShare.getFirst(), publicParameters.G) || !isFrom(signatureShare.getSecond(), publicParameters.G)) {
+            throw new IllegalArgumentException("The signature share is not from the group G of the public parameters.");
+        }
+    }
+
+    // Elements decoded with other instances of the same parameters are from equal, but not identical, fields.
+    private static boolean isFrom(Element element, Field field) {
+        Field elementField = element.getField();
+        return elementField == field || (elementField.getClass() == field.getClass()
+                && elementField.getOrder().equals(field.getOrder())
+                && elementField.getLengthInBytes() == field.getLengthInBytes());
+    }
+
+    /**
+     * jpbc's pairing divides by zero for (0, 0), the point of order 2 and the only point with y = 0 on
+     * y^2 = x^3 + x. Every other point of the curve can be paired, and a share with a point outside the group of
+     * order r just fails its equation.
+     */
+    private static boolean isPairable(Element point) {
+        return point.isZero() || !((CurveElement<?, ?>) point).getY().isZero();
+    }
+
+    // Returns a random non-zero exponent for batch verification.
+    private static BigInteger chooseBatchExponent() {
+        BigInteger exponent;
+        do {
+            exponent = new BigInteger(BATCH_EXPONENT_BITS, rand.get());
+        } while(exponent.signum() == 0);
+        return exponent;
+    }
+
+    private Element pair(Element a, Element b) {
+        Instrumentation.count(Metrics.Counter.PAIRING);
+        return verifier.getPairing().pairing(a, b);
+    }
+}
@@ -0,0 +1,133 @@
+package gcrypto.threshold;
+
+import gcrypto.Codec;
+import gcrypto.PublicParameters;
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import static gcrypto.Codec.HEADER_LENGTH;
+
+/**
+ * The binary encoding of the signature shares and the distributed keys, in the same format as `Codec`.
+ */
+public final class ThresholdCodec {
+
+    private ThresholdCodec() {
+    }
+
+    // *** Signature shares ***
+
+    /**
+     * Only the two elements of the share are encoded. r_k must stay with the server, as it would reveal the key share
+     * of the server together with the share.
+     */
+    public static byte[] encode(SignatureShare signatureShare) {
+        return encode(signatureShare, false);
+    }
+
+    public static byte[] encode(SignatureShare signatureShare, boolean compressed) {
+        Field G = signatureShare.getFirst().getField();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + 2 * pointLength(G, compressed));
+        write(buffer, signatureShare, compressed);
+        return buffer.array();
+    }
+
+    public static void write(ByteBuffer buffer, SignatureShare signatureShare) {
+        write(buffer, signatureShare, false);
+    }
+
+    public static void write(ByteBuffer buffer, SignatureShare signatureShare, boolean compressed) {
+        Codec.writeHeader(buffer, Codec.SIGNATURE_SHARE, Codec.flags(compressed));
+        Codec.writePoint(buffer, signatureShare.getFirst(), compressed);
+        Codec.writePoint(buffer, signatureShare.getSecond(), compressed);
+    }
+
+    public static SignatureShare decodeSignatureShare(byte[] bytes, PublicParameters publicParameters) {
+        return readSignatureShare(ByteBuffer.wrap(bytes), publicParameters);
+    }
+
+    /**
+     * @return the share, without r_k.
+     */
+    public static SignatureShare readSignatureShare(ByteBuffer buffer, PublicParameters publicParameters) {
+        boolean compressed = Codec.isCompressed(Codec.readHeader(buffer, Codec.SIGNATURE_SHARE));
+        Element first = Codec.readPoint(buffer, publicParameters, compressed);
+        Element second = Codec.readPoint(buffer, publicParameters, compressed);
+        return new SignatureShare(null, first, second);
+    }
+
+    // *** Distributed keys ***
+
+    /**
+     * Please note that the encoding includes the private keys of all the servers.
+     */
+    public static byte[] encode(DistributedKeys distributedKeys) {
+        return encode(distributedKeys, false);
+    }
+
+    /**
+     * @param compressed whether Y is compressed. The verification keys are in GT, so they are never compressed.
+     */
+    public static byte[] encode(DistributedKeys distributedKeys, boolean compressed) {
+        Element[] Y = distributedKeys.getY();
+        Field G = Y[0].getField();
+        int servers = distributedKeys.getServerCount();
+        int length = HEADER_LENGTH + 4 + 2 * pointLength(G, compressed)
+                + servers * (Codec.integerLength(G) + distributedKeys.getVerificationKey(1).getField().getLengthInBytes());
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        write(buffer, distributedKeys, compressed);
+        return buffer.array();
+    }
+
+    public static void write(ByteBuffer buffer, DistributedKeys distributedKeys) {
+        write(buffer, distributedKeys, false);
+    }
+
+    public static void write(ByteBuffer buffer, DistributedKeys distributedKeys, boolean compressed) {
+        Element[] Y = distributedKeys.getY();
+        Field G = Y[0].getField();
+        int servers = distributedKeys.getServerCount();
+        Codec.writeHeader(buffer, Codec.DISTRIBUTED_KEYS, Codec.flags(compressed));
+        buffer.putInt(servers);
+        Codec.writePoint(buffer, Y[0], compressed);
+        Codec.writePoint(buffer, Y[1], compressed);
+        for(int server = 1; server <= servers; server++) {
+            Codec.writeInteger(buffer, distributedKeys.getPrivateKey(server), G);
+        }
+        for(int server = 1; server <= servers; server++) {
+            Codec.writeElement(buffer, distributedKeys.getVerificationKey(server));
+        }
+    }
+
+    public static DistributedKeys decodeDistributedKeys(byte[] bytes, PublicParameters publicParameters) {
+        return readDistributedKeys(ByteBuffer.wrap(bytes), publicParameters);
+    }
+
+    public static DistributedKeys readDistributedKeys(ByteBuffer buffer, PublicParameters publicParameters) {
+        boolean compressed = Codec.isCompressed(Codec.readHeader(buffer, Codec.DISTRIBUTED_KEYS));
+        int servers = buffer.getInt();
+        if(servers < 1 || (long) servers * Codec.integerLength(publicParameters.G) > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid number of servers.");
+        }
+        Element[] Y = new Element[] {
+                Codec.readPoint(buffer, publicParameters, compressed),
+                Codec.readPoint(buffer, publicParameters, compressed)
+        };
+        BigInteger[] privateKeys = new BigInteger[servers];
+        for(int i = 0; i < servers; i++) {
+            privateKeys[i] = Codec.readInteger(buffer, publicParameters.G);
+        }
+        Element[] verificationKeys = new Element[servers];
+        for(int i = 0; i < servers; i++) {
+            verificationKeys[i] = Codec.readElement(buffer, publicParameters.GT);
+        }
+        return new DistributedKeys(Y, privateKeys, verificationKeys);
+    }
+
+    private static int pointLength(Field G, boolean compressed) {
+        return compressed ? Codec.compressedLength(G) : G.getLengthInBytes();
+    }
+}
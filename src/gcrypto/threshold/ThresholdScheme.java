@@ -1,13 +1,22 @@
 package gcrypto.threshold;
 
+import gcrypto.BitString;
+import gcrypto.IdentityCache;
+import gcrypto.Instrumentation;
+import gcrypto.Metrics;
+import gcrypto.NoncePool;
 import gcrypto.PrivateKey;
 import gcrypto.PublicParameters;
 import gcrypto.Scheme;
 import gcrypto.Signature;
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+import it.unisa.dia.gas.jpbc.PairingParameters;
 
 import java.math.BigInteger;
+import java.util.stream.IntStream;
 
+import static gcrypto.Helper.multiPower;
 import static gcrypto.Helper.power;
 
 public class ThresholdScheme extends Scheme {
@@ -26,6 +35,14 @@ public class ThresholdScheme extends Scheme {
         super(rBits, qBits, identityLength, messageLength);
     }
 
+    public ThresholdScheme(PairingParameters parameters, int identityLength, int messageLength) {
+        super(parameters, identityLength, messageLength);
+    }
+
+    public ThresholdScheme(PublicParameters publicParameters) {
+        super(publicParameters);
+    }
+
     /**
      *
      * @param threshold
@@ -46,61 +63,192 @@ public class ThresholdScheme extends Scheme {
     }
 
     public DistributedKeys KeyDis(PrivateKey privateKey, int servers, int threshold, String identity) {
-        // Construct a0+a1x+a2x^2+...+a(t-1)x^(t-1) where a0,a1,a2,...,a(t-1) are chosen from Zp.
-        Polynomial polynomial = constructKeyDisPolynomial(threshold, pairing.getG1().getOrder());
-        // r_u' = a0
-        r_up = polynomial.getCoefficient(0);
-        // Y is the public parameter for all servers.
-        Element[] Y = new Element[2];
-        Element identityMultiplier = calculateIdentityMultiplier(identity, publicParameters);
-        // Y[0] = privateKey[0]/(identityMultiplier^r_up)
-        //      = (g2^alpha)*(identityMultiplier)^(r_u - r_up)
-        BigInteger exponent = privateKey.getR_u().subtract(getR_up());
-        Y[0] = getMasterSecret().mul(power(identityMultiplier, exponent));
-        Y[1] = privateKey.getSecond();
-        // Construct the private/verification keys for each server.
-        BigInteger[] distributedPrivateKeys = new BigInteger[servers];
-        Element[] distributedVerificationKeys = new Element[servers];
-        for(int server = 1; server <= servers; server++) {
-            BigInteger f_k = polynomial.compute(BigInteger.valueOf(server));
-            distributedPrivateKeys[server-1] = f_k;
-            distributedVerificationKeys[server-1] = power(pair(identityMultiplier, publicParameters.g), f_k);
+        return KeyDis(privateKey, servers, threshold, BitString.fromString(identity));
+    }
+
+    public DistributedKeys KeyDis(PrivateKey privateKey, int servers, int threshold, BitString identity) {
+        long start = Instrumentation.start();
+        try {
+            if(getMasterSecret() == null) {
+                System.err.println("The master secret is not known.");
+                return null;
+            }
+            // Construct a0+a1x+a2x^2+...+a(t-1)x^(t-1) where a0,a1,a2,...,a(t-1) are chosen from Zp.
+            Polynomial polynomial = constructKeyDisPolynomial(threshold, pairing.getG1().getOrder());
+            // r_u' = a0
+            r_up = polynomial.getCoefficient(0);
+            // Y is the public parameter for all servers.
+            Element[] Y = new Element[2];
+            Element identityMultiplier = multipliers.calculateIdentityMultiplier(identity);
+            // Y[0] = privateKey[0]/(identityMultiplier^r_up)
+            //      = (g2^alpha)*(identityMultiplier)^(r_u - r_up)
+            BigInteger exponent = privateKey.getR_u().subtract(getR_up());
+            Y[0] = getMasterSecret().mul(power(identityMultiplier, exponent));
+            Y[1] = privateKey.getSecond();
+            // e(identityMultiplier, g) is the base of every verification key, so it is computed once and a fixed-base
+            // table is built for it.
+            IdentityCache.Entry entry = multipliers.getIdentityEntry(identity);
+            Element identityPairing = (entry != null) ? entry.getPairingWithG(verifier) : verifier.pairWithG(identityMultiplier);
+            ElementPowPreProcessing identityPairingPow = identityPairing.getElementPowPreProcessing();
+            // Construct the private/verification keys for each server. The servers are independent of each other, and
+            // each one only writes its own entries, so the result is the same as computing them one by one.
+            BigInteger[] distributedPrivateKeys = polynomial.computeAll(servers);
+            Element[] distributedVerificationKeys = new Element[servers];
+            IntStream.rangeClosed(1, servers).parallel().forEach(server -> {
+                BigInteger f_k = distributedPrivateKeys[server-1];
+                distributedVerificationKeys[server-1] = power(identityPairingPow, f_k);
+            });
+            return new DistributedKeys(Y, distributedPrivateKeys, distributedVerificationKeys);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.KEY_DIS, start);
         }
-        return new DistributedKeys(Y, distributedPrivateKeys, distributedVerificationKeys);
+    }
+
+    // Lets the other classes of the threshold scheme draw their nonces like the scheme does.
+    static BigInteger chooseNonce(BigInteger order) {
+        return chooseRandom(order);
+    }
+
+    /**
+     * Returns a signer for the server, which should be preferred over `ThrSigIndividual` when the server signs many
+     * messages for the same identity.
+     */
+    public ServerSigner getServerSigner(int server, BitString identity, DistributedKeys distributedKeys) {
+        return new ServerSigner(server, identity, distributedKeys, multipliers);
     }
 
     public static SignatureShare ThrSigIndividual(String message, String identity, BigInteger privateKey,
                                                   PublicParameters publicParameters) {
-        BigInteger r_k = chooseRandom(publicParameters.G.getOrder());
-        Element first_1 = power(calculateIdentityMultiplier(identity, publicParameters), privateKey);
-        Element first_2 = power(calculateMessageMultiplier(message, publicParameters), r_k);
-        Element first = first_1.mul(first_2).getImmutable();
-        Element second = power(publicParameters.g, r_k).getImmutable();
-        return new SignatureShare(r_k, first, second);
-    }
-
-    private static int lagrangeCoefficient(int[] omega, int k) {
-        double result = 1.0;
-        for(int j : omega) {
-            if(j == k) continue;
-            result *= (double)(-j) / (double)(k - j);
+        return ThrSigIndividual(BitString.fromString(message), BitString.fromString(identity), privateKey,
+                publicParameters);
+    }
+
+    public static SignatureShare ThrSigIndividual(BitString message, BitString identity, BigInteger privateKey,
+                                                  PublicParameters publicParameters) {
+        long start = Instrumentation.start();
+        try {
+            BigInteger r_k = chooseRandom(publicParameters.G.getOrder());
+            Element first_1 = powerIdentityMultiplier(identity, privateKey, publicParameters);
+            Element first_2 = power(calculateMessageMultiplier(message, publicParameters), r_k);
+            Element first = first_1.mul(first_2).getImmutable();
+            Element second = power(publicParameters.getGPowPreProcessing(), r_k).getImmutable();
+            return new SignatureShare(r_k, first, second);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.THR_SIG, start);
+        }
+    }
+
+    /**
+     * Same as above, but takes r_k and g^r_k from the pool, so only the power of the message multiplier is
+     * calculated online.
+     */
+    public static SignatureShare ThrSigIndividual(BitString message, BitString identity, BigInteger privateKey,
+                                                  PublicParameters publicParameters, NoncePool noncePool) {
+        if(noncePool == null) {
+            return ThrSigIndividual(message, identity, privateKey, publicParameters);
+        }
+        return ThrSigIndividualWithNonce(message, identity, privateKey, publicParameters, noncePool);
+    }
+
+    private static SignatureShare ThrSigIndividualWithNonce(BitString message, BitString identity, BigInteger privateKey,
+                                                            PublicParameters publicParameters, NoncePool noncePool) {
+        long start = Instrumentation.start();
+        try {
+            checkNoncePool(noncePool, publicParameters);
+            NoncePool.Nonce nonce = noncePool.take();
+            Element first_1 = powerIdentityMultiplier(identity, privateKey, publicParameters);
+            Element first_2 = power(calculateMessageMultiplier(message, publicParameters), nonce.getR());
+            Element first = first_1.mul(first_2).getImmutable();
+            return new SignatureShare(nonce.getR(), first, nonce.getGr());
+        } finally {
+            Instrumentation.stop(Metrics.Operation.THR_SIG, start);
         }
-        return (int)result;
     }
 
     public static Signature Reconstruct(int[] servers, SignatureShare[] signatureShares, Element[] Y,
                                         PublicParameters publicParameters) {
-        Element first = Y[0];
-        Element second = Y[1];
-        Element third = publicParameters.G.newOneElement().getImmutable();
-        for(int i = 0; i < servers.length; i++) {
-            SignatureShare signatureShare = signatureShares[i];
-            if(signatureShare == null) return null;
-            int server = servers[i];
-            BigInteger lagrangeCoeff = BigInteger.valueOf(lagrangeCoefficient(servers, server));
-            first = first.mul(power(signatureShare.getFirst(), lagrangeCoeff)).getImmutable();
-            third = third.mul(power(signatureShare.getSecond(), lagrangeCoeff)).getImmutable();
+        long start = Instrumentation.start();
+        try {
+            for(SignatureShare signatureShare : signatureShares) {
+                if(signatureShare == null) return null;
+            }
+            BigInteger[] lagrangeCoeffs;
+            try {
+                lagrangeCoeffs = LagrangeCoefficients.get(servers, publicParameters.G.getOrder());
+            } catch(IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return null;
+            }
+            // first = Y[0] * prod(first_k^lambda_k), third = prod(second_k^lambda_k), each as a single multi-exponentiation.
+            Element[] firsts = new Element[servers.length];
+            Element[] seconds = new Element[servers.length];
+            for(int i = 0; i < servers.length; i++) {
+                firsts[i] = signatureShares[i].getFirst();
+                seconds[i] = signatureShares[i].getSecond();
+            }
+            Element first = Y[0].mul(multiPower(firsts, lagrangeCoeffs)).getImmutable();
+            Element second = Y[1];
+            Element third = multiPower(seconds, lagrangeCoeffs);
+            return new Signature(first, second, third);
+        } finally {
+            Instrumentation.stop(Metrics.Operation.RECONSTRUCT, start);
+        }
+    }
+
+    public ShareVerifier getShareVerifier() {
+        return new ShareVerifier(verifier);
+    }
+
+    public boolean verifyShare(int server, SignatureShare signatureShare, String message, DistributedKeys distributedKeys) {
+        return verifyShare(server, signatureShare, BitString.fromString(message), distributedKeys);
+    }
+
+    public boolean verifyShare(int server, SignatureShare signatureShare, BitString message, DistributedKeys distributedKeys) {
+        return getShareVerifier().verifyShare(server, signatureShare, message, distributedKeys);
+    }
+
+    public boolean[] verifyShares(int[] servers, SignatureShare[] signatureShares, String message,
+                                  DistributedKeys distributedKeys) {
+        return verifyShares(servers, signatureShares, BitString.fromString(message), distributedKeys);
+    }
+
+    public boolean[] verifyShares(int[] servers, SignatureShare[] signatureShares, BitString message,
+                                  DistributedKeys distributedKeys) {
+        return getShareVerifier().verifyShares(servers, signatureShares, message, distributedKeys);
+    }
+
+    public Signature ReconstructValid(int[] servers, SignatureShare[] signatureShares, int threshold, String message,
+                                      DistributedKeys distributedKeys) {
+        return ReconstructValid(servers, signatureShares, threshold, BitString.fromString(message), distributedKeys);
+    }
+
+    /**
+     * Checks the shares first, and reconstructs from the first `threshold` valid ones.
+     * @return the reconstructed signature, or null if there are fewer than `threshold` valid shares.
+     */
+    public Signature ReconstructValid(int[] servers, SignatureShare[] signatureShares, int threshold, BitString message,
+                                      DistributedKeys distributedKeys) {
+        return ReconstructValid(servers, signatureShares, threshold, message, distributedKeys, getShareVerifier());
+    }
+
+    public static Signature ReconstructValid(int[] servers, SignatureShare[] signatureShares, int threshold,
+                                             BitString message, DistributedKeys distributedKeys,
+                                             ShareVerifier shareVerifier) {
+        boolean[] valid = shareVerifier.verifyShares(servers, signatureShares, message, distributedKeys);
+        int[] quorum = new int[threshold];
+        SignatureShare[] quorumShares = new SignatureShare[threshold];
+        int count = 0;
+        for(int i = 0; i < servers.length && count < threshold; i++) {
+            if(valid[i]) {
+                quorum[count] = servers[i];
+                quorumShares[count] = signatureShares[i];
+                count++;
+            }
+        }
+        if(count < threshold) {
+            System.err.println("Only " + count + " of the signature shares are valid.");
+            return null;
         }
-        return new Signature(first, second, third);
+        return Reconstruct(quorum, quorumShares, distributedKeys.getY(), shareVerifier.getVerifier().getPublicParameters());
     }
 }
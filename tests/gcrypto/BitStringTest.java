@@ -0,0 +1,54 @@
+package gcrypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+public class BitStringTest {
+
+    @Test
+    public void representationTest() {
+        String bits = "1011000000000000000000000000000000000000000000000000000000000000001";
+        BitString fromString = BitString.fromString(bits);
+        Assertions.assertEquals(67, fromString.length());
+        Assertions.assertEquals(bits, fromString.toString());
+
+        // The most significant bit of the first byte is the first bit.
+        byte[] bytes = new byte[9];
+        bytes[0] = (byte) 0xB0;
+        bytes[8] = (byte) 0x20;
+        Assertions.assertEquals(fromString, BitString.fromBytes(bytes, 67));
+        Assertions.assertArrayEquals(bytes, fromString.toByteArray());
+
+        // Bit i of the words is the i-th bit.
+        long[] words = new long[] { 0b1101L, 0b100L | (1L << 20) };
+        Assertions.assertEquals(fromString, BitString.fromLongs(words, 67));
+
+        BitSet bitSet = new BitSet();
+        bitSet.set(0);
+        bitSet.set(2);
+        bitSet.set(3);
+        bitSet.set(66);
+        Assertions.assertEquals(fromString, BitString.fromBitSet(bitSet, 67));
+    }
+
+    @Test
+    public void windowTest() {
+        BitString bits = BitString.fromString("0000000000000000000000000000000000000000000000000000000000001101101");
+        Assertions.assertEquals(0b1011, bits.window(60, 4));
+        Assertions.assertEquals(0b1011011, bits.window(60, 7));
+        Assertions.assertEquals(0, bits.window(0, 8));
+    }
+
+    @Test
+    public void hashTest() {
+        byte[] message = "an arbitrary-length message".getBytes();
+        BitString hash = BitString.hash(message, 300);
+        Assertions.assertEquals(300, hash.length());
+        Assertions.assertEquals(hash, BitString.hash(message, 300));
+        // Shorter hashes are prefixes of the longer ones.
+        Assertions.assertEquals(hash.toString().substring(0, 10), BitString.hash(message, 10).toString());
+        Assertions.assertNotEquals(hash, BitString.hash("another message".getBytes(), 300));
+    }
+}
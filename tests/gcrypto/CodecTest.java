@@ -0,0 +1,303 @@
+package gcrypto;
+
+import gcrypto.threshold.DistributedKeys;
+import gcrypto.threshold.SignatureShare;
+import gcrypto.threshold.ThresholdCodec;
+import gcrypto.threshold.ThresholdScheme;
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.plaf.jpbc.field.curve.CurveElement;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+public class CodecTest {
+    private ThresholdScheme scheme;
+    private PublicParameters publicParameters;
+
+    private int identityLength = 5;
+    private int messageLength = 10;
+
+    @BeforeEach
+    public void init() throws Exception {
+        scheme = new ThresholdScheme(160, 512, identityLength, messageLength);
+        publicParameters = scheme.Setup(new Authority());
+    }
+
+    @Test
+    public void publicParametersTest() {
+        PublicParameters decoded = Codec.decodePublicParameters(Codec.encode(publicParameters));
+        Assertions.assertEquals(publicParameters.getPairingParameters(), decoded.getPairingParameters());
+        Assertions.assertEquals(identityLength, decoded.U.length);
+        Assertions.assertEquals(messageLength, decoded.M.length);
+        Assertions.assertTrue(decoded.g1.isEqual(publicParameters.g1));
+        Assertions.assertTrue(decoded.M[messageLength-1].isEqual(publicParameters.M[messageLength-1]));
+
+        // The decoded parameters verify the signatures of the original ones.
+        String identity = "00101";
+        String message = "1010011001";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+        Verifier verifier = new Verifier(decoded, decoded.getPairing());
+        Assertions.assertTrue(verifier.verify(identity, message, Codec.decodeSignature(Codec.encode(signature), decoded)));
+        Assertions.assertFalse(verifier.verify(identity, "1010011000", Codec.decodeSignature(Codec.encode(signature), decoded)));
+    }
+
+    @Test
+    public void privateKeyAndSignatureTest() {
+        String identity = "00101";
+        String message = "1010011001";
+        PrivateKey privateKey = Codec.decodePrivateKey(Codec.encode(scheme.Extract(identity)), publicParameters);
+        Signature signature = scheme.Sign(message, privateKey);
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+
+        // A signature is the header and three elements.
+        byte[] bytes = Codec.encode(signature);
+        Assertions.assertEquals(Codec.HEADER_LENGTH + 3 * publicParameters.G.getLengthInBytes(), bytes.length);
+        // Several objects in a single buffer, read from a direct buffer as well.
+        ByteBuffer buffer = ByteBuffer.allocateDirect(2 * bytes.length);
+        Codec.write(buffer, signature);
+        Codec.write(buffer, signature);
+        buffer.flip();
+        Assertions.assertTrue(scheme.Verify(identity, message, Codec.readSignature(buffer, publicParameters)));
+        Assertions.assertTrue(scheme.Verify(identity, message, Codec.readSignature(buffer, publicParameters)));
+        Assertions.assertFalse(buffer.hasRemaining());
+        // The wrong type is rejected.
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Codec.decodePrivateKey(bytes, publicParameters));
+    }
+
+    @Test
+    public void invalidPointTest() {
+        String identity = "00101";
+        String message = "1010011001";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+        Element lowOrder = ThresholdSchemeTest.lowOrderPoint(publicParameters);
+        // The point of order 2 on its own, and added to a valid signature, which the pairing would not notice.
+        Signature[] invalid = new Signature[] {
+                new Signature(lowOrder, signature.getSecond(), signature.getThird()),
+                new Signature(signature.getFirst().mul(lowOrder), signature.getSecond(), signature.getThird()),
+                new Signature(signature.getFirst(), signature.getSecond(), signature.getThird().mul(lowOrder))
+        };
+        for(Signature s : invalid) {
+            byte[] bytes = Codec.encode(s);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Codec.decodeSignature(bytes, publicParameters));
+        }
+        // A point that is not on the curve.
+        byte[] bytes = Codec.encode(signature);
+        bytes[Codec.HEADER_LENGTH + 1] ^= 1;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Codec.decodeSignature(bytes, publicParameters));
+
+        SignatureShare share = ThresholdScheme.ThrSigIndividual(message, identity, scheme.getAlpha(), publicParameters);
+        byte[] shareBytes = ThresholdCodec.encode(new SignatureShare(share.getR_k(), share.getFirst(), lowOrder));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ThresholdCodec.decodeSignatureShare(shareBytes, publicParameters));
+    }
+
+    @Test
+    public void subgroupCheckTest() {
+        // Points of the whole curve, most of which are not in the group of order r, against jpbc's own exponentiation.
+        Random random = new Random(3);
+        BigInteger order = publicParameters.G.getOrder();
+        byte[] compressed = new byte[Codec.compressedLength(publicParameters.G)];
+        int inGroup = 0;
+        for(int i = 0; i < 20; i++) {
+            Element point = (i % 4 == 0) ? publicParameters.G.newRandomElement() : publicParameters.G.newElement();
+            if(i % 4 != 0) {
+                random.nextBytes(compressed);
+                compressed[0] &= 0x7f;
+                ((CurveElement<?, ?>) point).setFromBytesCompressed(compressed);
+                if(!((CurveElement<?, ?>) point).isValid()) continue;
+            }
+            boolean expected = point.duplicate().pow(order).isZero();
+            byte[] bytes = ((CurveElement<?, ?>) point).toBytesCompressed();
+            if(expected) {
+                inGroup++;
+                Assertions.assertTrue(Codec.decompress(bytes, 0, publicParameters.G).isEqual(point));
+            } else {
+                Assertions.assertThrows(IllegalArgumentException.class, () -> Codec.decompress(bytes, 0, publicParameters.G));
+            }
+        }
+        Assertions.assertEquals(5, inGroup);
+    }
+
+    @Test
+    public void decodeCostTest() {
+        String identity = "00101";
+        String message = "1010011001";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+        byte[] parameterBytes = Codec.encode(publicParameters);
+        byte[] signatureBytes = Codec.encode(signature);
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Instrumentation.setMetrics(metrics);
+        try {
+            // The trusted public parameters are only checked to be on the curve.
+            Codec.decodePublicParameters(parameterBytes);
+            Assertions.assertEquals(0, metrics.getCount(Metrics.Counter.SUBGROUP_CHECK));
+            Codec.decodePublicParameters(parameterBytes, true);
+            Assertions.assertEquals(5 + identityLength + messageLength, metrics.getCount(Metrics.Counter.SUBGROUP_CHECK));
+            // A signature takes a check per point, and no other exponentiation.
+            Codec.decodeSignature(signatureBytes, publicParameters);
+            Assertions.assertEquals(5 + identityLength + messageLength + 3, metrics.getCount(Metrics.Counter.SUBGROUP_CHECK));
+            Assertions.assertEquals(0, metrics.getCount(Metrics.Counter.POWER));
+        } finally {
+            Instrumentation.setMetrics(null);
+        }
+        // And a check costs less than jpbc's exponentiation by r, which it replaces.
+        BigInteger order = publicParameters.G.getOrder();
+        long decodeNanos = 0;
+        long powerNanos = 0;
+        for(int round = 0; round < 2; round++) {
+            decodeNanos = System.nanoTime();
+            for(int i = 0; i < 5; i++) {
+                Codec.decodeSignature(signatureBytes, publicParameters);
+            }
+            decodeNanos = System.nanoTime() - decodeNanos;
+            powerNanos = System.nanoTime();
+            for(int i = 0; i < 5; i++) {
+                signature.getFirst().duplicate().pow(order);
+                signature.getSecond().duplicate().pow(order);
+                signature.getThird().duplicate().pow(order);
+            }
+            powerNanos = System.nanoTime() - powerNanos;
+        }
+        Assertions.assertTrue(decodeNanos < powerNanos, "Decoding took " + decodeNanos + " ns, jpbc " + powerNanos + " ns.");
+    }
+
+    @Test
+    public void thresholdTest() {
+        String identity = "00101";
+        String message = "1010011001";
+        int servers = 5;
+        int threshold = 3;
+        DistributedKeys distKeys = ThresholdCodec.decodeDistributedKeys(
+                ThresholdCodec.encode(scheme.KeyDis(scheme.Extract(identity), servers, threshold, identity)), publicParameters);
+        int[] indexes = new int[] { 5, 2, 3 };
+        SignatureShare[] signatureShares = new SignatureShare[indexes.length];
+        for(int i = 0; i < indexes.length; i++) {
+            SignatureShare share = ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(indexes[i]), publicParameters);
+            signatureShares[i] = ThresholdCodec.decodeSignatureShare(ThresholdCodec.encode(share), publicParameters);
+            Assertions.assertNull(signatureShares[i].getR_k());
+        }
+        Assertions.assertTrue(scheme.verifyShare(indexes[0], signatureShares[0], message, distKeys));
+        Signature signature = ThresholdScheme.Reconstruct(indexes, signatureShares, distKeys.getY(), publicParameters);
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+    }
+
+    @Test
+    public void compressedTest() {
+        String identity = "00101";
+        String message = "1010011001";
+        PrivateKey privateKey = scheme.Extract(identity);
+        Signature signature = scheme.Sign(message, privateKey);
+        // The x-coordinate and a sign byte for every element.
+        byte[] bytes = Codec.encode(signature, true);
+        Assertions.assertEquals(Codec.HEADER_LENGTH + 3 * (publicParameters.G.getLengthInBytes() / 2 + 1), bytes.length);
+        Signature decoded = Codec.decodeSignature(bytes, publicParameters);
+        Assertions.assertTrue(decoded.getFirst().isEqual(signature.getFirst()));
+        Assertions.assertTrue(scheme.Verify(identity, message, decoded));
+
+        // The second element is the same for every signature under the private key, so it comes from the cache.
+        PointCache cache = new PointCache(16);
+        Codec.decodeSignature(Codec.encode(scheme.Sign(message, privateKey), true), publicParameters, cache);
+        decoded = Codec.decodeSignature(Codec.encode(scheme.Sign(message, privateKey), true), publicParameters, cache);
+        Assertions.assertTrue(scheme.Verify(identity, message, decoded));
+        Assertions.assertEquals(1, cache.getHits());
+
+        PublicParameters decodedParameters = Codec.decodePublicParameters(Codec.encode(publicParameters, true));
+        Assertions.assertTrue(decodedParameters.U[0].isEqual(publicParameters.U[0]));
+        Assertions.assertTrue(scheme.Verify(identity, message, Codec.decodeSignature(bytes, decodedParameters)));
+        privateKey = Codec.decodePrivateKey(Codec.encode(privateKey, true), publicParameters);
+        Assertions.assertTrue(scheme.Verify(identity, message, scheme.Sign(message, privateKey)));
+
+        DistributedKeys distKeys = scheme.KeyDis(privateKey, 5, 3, identity);
+        DistributedKeys decodedKeys = ThresholdCodec.decodeDistributedKeys(ThresholdCodec.encode(distKeys, true), publicParameters);
+        Assertions.assertTrue(decodedKeys.getY()[0].isEqual(distKeys.getY()[0]));
+        SignatureShare share = ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(2), publicParameters);
+        SignatureShare decodedShare = ThresholdCodec.decodeSignatureShare(ThresholdCodec.encode(share, true), publicParameters);
+        Assertions.assertTrue(scheme.verifyShare(2, decodedShare, message, decodedKeys));
+
+        // Invalid points are rejected, with and without the cache, and are not cached.
+        Element lowOrder = ThresholdSchemeTest.lowOrderPoint(publicParameters);
+        Signature invalid = new Signature(signature.getFirst().mul(lowOrder), signature.getSecond(), signature.getThird());
+        byte[] invalidBytes = Codec.encode(invalid, true);
+        int cached = cache.size();
+        for(int i = 0; i < 2; i++) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Codec.decodeSignature(invalidBytes, publicParameters, cache));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Codec.decodeSignature(invalidBytes, decodedParameters));
+        }
+        Assertions.assertEquals(cached, cache.size());
+        // Any other x-coordinate gives a point that is not on the curve or, almost surely, not in the group of order r.
+        int rejected = 0;
+        for(int i = 0; i < 8; i++) {
+            byte[] offCurve = bytes.clone();
+            offCurve[Codec.HEADER_LENGTH + publicParameters.G.getLengthInBytes() / 2 - 1] += i + 1;
+            try {
+                Codec.decodeSignature(offCurve, publicParameters);
+            } catch(IllegalArgumentException e) {
+                rejected++;
+            }
+        }
+        Assertions.assertEquals(8, rejected);
+        Assertions.assertEquals(cached, cache.size());
+    }
+
+    @Test
+    public void fileTest() throws Exception {
+        String identity = "00101";
+        String message = "1010011001";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+        Path pairingFile = Files.createTempFile("pairing", ".param");
+        Path parametersFile = Files.createTempFile("parameters", ".bin");
+        try {
+            // A new scheme under the same pairing, without generating it again.
+            Codec.savePairingParameters(scheme.getPairingParameters(), pairingFile);
+            ThresholdScheme sameScheme = new ThresholdScheme(Codec.loadPairingParameters(pairingFile), identityLength, messageLength);
+            Assertions.assertEquals(scheme.getPairingParameters(), sameScheme.getPairingParameters());
+
+            // A verify-only scheme from the saved public parameters.
+            Codec.save(publicParameters, parametersFile, true);
+            ThresholdScheme verifyOnly = new ThresholdScheme(Codec.loadPublicParameters(parametersFile));
+            Assertions.assertTrue(verifyOnly.Verify(identity, message, Codec.decodeSignature(Codec.encode(signature), verifyOnly.getPublicParameters())));
+            Assertions.assertNull(verifyOnly.Extract(identity));
+        } finally {
+            Files.delete(pairingFile);
+            Files.delete(parametersFile);
+        }
+    }
+
+    @Test
+    public void verifierTest() {
+        String identity = "00101";
+        String message = "1010011001";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+        byte[] parameterBytes = Codec.encode(publicParameters, true);
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Instrumentation.setMetrics(metrics);
+        Verifier plain;
+        Verifier verifier;
+        try {
+            // The startup computes e(g2, g1) and checks no point against the group order.
+            plain = Verifier.decode(parameterBytes);
+            Assertions.assertEquals(1, metrics.getCount(Metrics.Counter.PAIRING));
+            Assertions.assertEquals(0, metrics.getCount(Metrics.Counter.SUBGROUP_CHECK));
+            verifier = plain.precompute(true);
+            Assertions.assertEquals(1, metrics.getCount(Metrics.Counter.PAIRING));
+            Assertions.assertEquals(0, metrics.getCount(Metrics.Counter.POWER));
+        } finally {
+            Instrumentation.setMetrics(null);
+        }
+        // The tables belong to the returned verifier, not to the public parameters or the other verifiers.
+        Assertions.assertTrue(verifier.getMultipliers().hasMultiplierTables());
+        Assertions.assertFalse(plain.getMultipliers().hasMultiplierTables());
+        Assertions.assertSame(plain.getPublicParameters(), verifier.getPublicParameters());
+        Assertions.assertTrue(plain.verify(identity, message, signature));
+        Assertions.assertTrue(verifier.verify(identity, message, signature));
+        Assertions.assertFalse(verifier.verify(identity, "1010011000", signature));
+        Assertions.assertTrue(verifier.withProductPairing(true).verify(identity, message, signature));
+        // Anything but the public parameters is rejected.
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Verifier.decode(Codec.encode(scheme.Extract(identity))));
+    }
+}
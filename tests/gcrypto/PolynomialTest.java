@@ -1,10 +1,12 @@
 package gcrypto;
 
+import gcrypto.threshold.LagrangeCoefficients;
 import gcrypto.threshold.Polynomial;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigInteger;
+import java.util.Random;
 
 public class PolynomialTest {
 
@@ -27,4 +29,65 @@ public class PolynomialTest {
         result = polynomial.compute(BigInteger.valueOf(3));
         Assertions.assertEquals(BigInteger.valueOf(307), result);
     }
+
+    @Test
+    public void computeAllTest() {
+        BigInteger order = BigInteger.valueOf(1000);
+        Polynomial polynomial = new Polynomial(new BigInteger[]{
+                BigInteger.valueOf(7),
+                BigInteger.valueOf(4),
+                BigInteger.valueOf(5),
+                BigInteger.valueOf(9)
+        }, order);
+        BigInteger[] results = polynomial.computeAll(3);
+        Assertions.assertEquals(3, results.length);
+        Assertions.assertEquals(BigInteger.valueOf(25), results[0]);
+        // 7 + 4*2 + 5*4 + 9*8 = 107
+        Assertions.assertEquals(BigInteger.valueOf(107), results[1]);
+        Assertions.assertEquals(BigInteger.valueOf(307), results[2]);
+    }
+
+    @Test
+    public void largeComputeTest() {
+        // Compare with the unreduced sum for large coefficients and a large degree.
+        BigInteger order = BigInteger.ONE.shiftLeft(160).nextProbablePrime();
+        Random random = new Random(7);
+        BigInteger[] coefficients = new BigInteger[500];
+        for(int i = 0; i < coefficients.length; i++) {
+            coefficients[i] = new BigInteger(160, random).mod(order);
+        }
+        Polynomial polynomial = new Polynomial(coefficients, order);
+        BigInteger[] results = polynomial.computeAll(20);
+        for(int x = 1; x <= 20; x++) {
+            BigInteger expected = BigInteger.ZERO;
+            for(int i = 0; i < coefficients.length; i++) {
+                expected = expected.add(coefficients[i].multiply(BigInteger.valueOf(x).pow(i)));
+            }
+            Assertions.assertEquals(expected.mod(order), results[x-1]);
+        }
+    }
+
+    @Test
+    public void lagrangeInterpolationTest() {
+        // f(0) = sum(lambda_k * f(k)) for any quorum of t servers.
+        BigInteger order = BigInteger.ONE.shiftLeft(160).nextProbablePrime();
+        Random random = new Random(11);
+        int threshold = 50;
+        BigInteger[] coefficients = new BigInteger[threshold];
+        for(int i = 0; i < threshold; i++) {
+            coefficients[i] = new BigInteger(160, random).mod(order);
+        }
+        Polynomial polynomial = new Polynomial(coefficients, order);
+        BigInteger[] values = polynomial.computeAll(200);
+        for(int attempt = 0; attempt < 3; attempt++) {
+            int[] servers = random.ints(1, 201).distinct().limit(threshold).toArray();
+            BigInteger[] lambdas = LagrangeCoefficients.get(servers, order);
+            Assertions.assertArrayEquals(LagrangeCoefficients.compute(servers, order), lambdas);
+            BigInteger result = BigInteger.ZERO;
+            for(int i = 0; i < threshold; i++) {
+                result = result.add(lambdas[i].multiply(values[servers[i] - 1]));
+            }
+            Assertions.assertEquals(coefficients[0], result.mod(order));
+        }
+    }
 }
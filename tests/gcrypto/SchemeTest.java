@@ -1,11 +1,21 @@
 package gcrypto;
 
 import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+import it.unisa.dia.gas.jpbc.PairingParameters;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static gcrypto.Helper.power;
 
@@ -57,4 +67,430 @@ public class SchemeTest {
         Assertions.assertFalse(scheme.Verify(identity, falseMsg, signature));
         Assertions.assertFalse(scheme.Verify(falseIdentity, message, signature));
     }
+
+    @Test
+    public void verifierSetupTest() {
+        scheme.Setup(authority);
+
+        String identity = "00101";
+        String message = "0110011010";
+
+        PrivateKey privateKey = scheme.Extract(identity);
+        Signature signature = scheme.Sign(message, privateKey);
+        Verifier verifier = scheme.getVerifier();
+        Assertions.assertTrue(verifier.verify(identity, message, signature));
+
+        // Running the setup again must not leave a stale verifier behind.
+        scheme.Setup(authority);
+        Assertions.assertNotSame(verifier, scheme.getVerifier());
+        Assertions.assertFalse(scheme.Verify(identity, message, signature));
+        Assertions.assertTrue(scheme.Verify(identity, message, scheme.Sign(message, scheme.Extract(identity))));
+        // The old verifier still belongs to the old public parameters.
+        Assertions.assertTrue(verifier.verify(identity, message, signature));
+    }
+
+    @Test
+    public void verifyGlobalTest() {
+        PublicParameters p = scheme.Setup(authority);
+
+        String identity = "00101";
+        String message = "0110011010";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+
+        Assertions.assertTrue(Scheme.VerifyGlobal(p, p.getPairing(), identityLength, messageLength, identity, message, signature));
+        Assertions.assertFalse(Scheme.VerifyGlobal(p, p.getPairing(), identityLength, messageLength, identity, "0110011011", signature));
+        // The verifier is built once per public parameters, and rebuilt for the parameters of the next setup.
+        Verifier verifier = p.getVerifier(p.getPairing());
+        Assertions.assertSame(verifier, p.getVerifier(p.getPairing()));
+        PublicParameters next = scheme.Setup(authority);
+        Assertions.assertNotSame(verifier, next.getVerifier(next.getPairing()));
+        Assertions.assertFalse(Scheme.VerifyGlobal(next, next.getPairing(), identityLength, messageLength, identity, message, signature));
+    }
+
+    @Test
+    public void productPairingTest() {
+        scheme.Setup(authority);
+
+        String identity = "00101";
+        String message = "0110011010";
+
+        String falseIdentity = "01101";
+        String falseMsg = "0110011011";
+
+        PrivateKey privateKey = scheme.Extract(identity);
+        Signature signature = scheme.Sign(message, privateKey);
+
+        scheme.setProductPairing(true);
+        Assertions.assertTrue(scheme.getVerifier().isProductPairing());
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+        Assertions.assertFalse(scheme.Verify(identity, falseMsg, signature));
+        Assertions.assertFalse(scheme.Verify(falseIdentity, message, signature));
+
+        // The selected path must survive another setup.
+        scheme.Setup(authority);
+        Assertions.assertTrue(scheme.getVerifier().isProductPairing());
+        Assertions.assertTrue(scheme.Verify(identity, message, scheme.Sign(message, scheme.Extract(identity))));
+    }
+
+    @Test
+    public void fixedBasePowerTest() {
+        PublicParameters p = scheme.Setup(authority);
+        BigInteger alpha = scheme.getAlpha();
+        Assertions.assertTrue(power(p.getGPowPreProcessing(), alpha).isEqual(power(p.g, alpha)));
+    }
+
+    @Test
+    public void standardPairingParametersTest() {
+        PairingParameters parameters = Scheme.standardPairingParameters();
+        BigInteger r = parameters.getBigInteger("r");
+        BigInteger q = parameters.getBigInteger("q");
+        Assertions.assertEquals(q, parameters.getBigInteger("h").multiply(r).subtract(BigInteger.ONE));
+        Assertions.assertTrue(r.isProbablePrime(50));
+        Assertions.assertTrue(q.isProbablePrime(50));
+        Assertions.assertEquals(r, BigInteger.ONE.shiftLeft(159).add(BigInteger.ONE.shiftLeft(107)).add(BigInteger.ONE));
+
+        Scheme standardScheme = new Scheme(parameters, identityLength, messageLength);
+        standardScheme.Setup(authority);
+        Signature signature = standardScheme.Sign("1010011001", standardScheme.Extract("00101"));
+        Assertions.assertTrue(standardScheme.Verify("00101", "1010011001", signature));
+        Assertions.assertFalse(standardScheme.Verify("00101", "1010011000", signature));
+    }
+
+    @Test
+    public void noncePoolTest() throws Exception {
+        PublicParameters p = scheme.Setup(authority);
+        String identity = "00101";
+        String message = "1010011001";
+        PrivateKey privateKey = scheme.Extract(identity);
+        try(NoncePool pool = new NoncePool(p, 4, 1)) {
+            for(int i = 0; i < 200 && pool.getDepth() < 4; i++) {
+                Thread.sleep(50);
+            }
+            Assertions.assertEquals(4, pool.getDepth());
+            Assertions.assertTrue(pool.getRefillRate() > 0);
+            scheme.setNoncePool(pool);
+            // More signatures than the pool holds. The pool is refilled in the background, or the nonces are
+            // calculated on the spot, but they are never reused.
+            Set<ByteBuffer> nonces = new HashSet<>();
+            for(int i = 0; i < 8; i++) {
+                Signature signature = scheme.Sign(message, privateKey);
+                Assertions.assertTrue(scheme.Verify(identity, message, signature));
+                Assertions.assertTrue(nonces.add(ByteBuffer.wrap(signature.getThird().toBytes())));
+            }
+            Assertions.assertEquals(8, pool.getTakenCount());
+            Assertions.assertTrue(pool.getGeneratedCount() + pool.getMissCount() >= 8 + pool.getDepth());
+            // A pool for other public parameters is rejected.
+            scheme.Setup(authority);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> scheme.Sign(message, scheme.Extract(identity)));
+        }
+    }
+
+    @Test
+    public void extractAllTest() {
+        scheme.Setup(authority);
+        // Enough identities for a subset-product table, and two with a wrong length.
+        List<BitString> identities = new ArrayList<>();
+        for(int i = 0; i < Scheme.EXTRACT_TABLE_THRESHOLD; i++) {
+            identities.add(BitString.fromLongs(new long[] { i % 32 }, identityLength));
+        }
+        identities.add(BitString.fromString("0101"));
+        identities.add(BitString.fromString("010101"));
+        Queue<ExtractResult> results = new ConcurrentLinkedQueue<>();
+        Assertions.assertEquals(Scheme.EXTRACT_TABLE_THRESHOLD, scheme.ExtractAll(identities, results::add));
+        Assertions.assertEquals(identities.size(), results.size());
+        int failures = 0;
+        for(ExtractResult result : results) {
+            if(!result.isSuccess()) {
+                Assertions.assertNotEquals(identityLength, result.getIdentity().length());
+                Assertions.assertNotNull(result.getError());
+                failures++;
+            } else if(result.getIdentity().get(0)) {
+                Signature signature = scheme.Sign("1010011001", result.getPrivateKey());
+                Assertions.assertTrue(scheme.Verify(result.getIdentity(), BitString.fromString("1010011001"), signature));
+            }
+        }
+        Assertions.assertEquals(2, failures);
+
+        // A sink that throws does not stop the other identities.
+        results.clear();
+        Assertions.assertEquals(Scheme.EXTRACT_TABLE_THRESHOLD, scheme.ExtractAll(identities, result -> {
+            results.add(result);
+            if(!result.isSuccess()) throw new IllegalStateException();
+        }));
+        Assertions.assertEquals(identities.size(), results.size());
+        // Without the master secret, every identity fails.
+        results.clear();
+        Assertions.assertEquals(0, new Scheme(160, 512, identityLength, messageLength).ExtractAll(identities, results::add));
+        Assertions.assertEquals(identities.size(), results.size());
+        for(ExtractResult result : results) {
+            Assertions.assertFalse(result.isSuccess());
+            Assertions.assertNull(result.getPrivateKey());
+        }
+    }
+
+    @Test
+    public void multiPowerTest() {
+        PublicParameters p = scheme.Setup(authority);
+        Random random = new Random(5);
+        // Few bases with full exponents (Straus) and many bases with short exponents (Pippenger).
+        int[][] configurations = new int[][] { { 1, 160 }, { 7, 160 }, { 200, 16 } };
+        for(int[] configuration : configurations) {
+            Element[] bases = new Element[configuration[0]];
+            BigInteger[] exponents = new BigInteger[configuration[0]];
+            Element expected = p.G.newOneElement();
+            for(int i = 0; i < bases.length; i++) {
+                bases[i] = p.G.newRandomElement().getImmutable();
+                exponents[i] = new BigInteger(configuration[1], random);
+                if(i % 3 == 1) exponents[i] = exponents[i].negate();
+                if(i % 5 == 4) exponents[i] = BigInteger.ZERO;
+                Element reference = bases[i].duplicate().pow(exponents[i].abs());
+                expected.mul((exponents[i].signum() < 0) ? reference.invert() : reference);
+            }
+            Assertions.assertTrue(Helper.multiPower(bases, exponents).isEqual(expected));
+        }
+    }
+
+    @Test
+    public void powerTest() {
+        PublicParameters p = scheme.Setup(authority);
+        Random random = new Random(7);
+        Element base = p.G.newRandomElement().getImmutable();
+        Element gtBase = scheme.pair(base, p.g);
+        BigInteger order = p.G.getOrder();
+        BigInteger[] exponents = new BigInteger[] {
+                BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(2), order.subtract(BigInteger.ONE), order,
+                order.add(BigInteger.TEN), new BigInteger(160, random), new BigInteger(160, random).negate(),
+                new BigInteger(20, random)
+        };
+        // The results are immutable, so they are not changed by the following calculations.
+        List<Element> results = new ArrayList<>();
+        List<Element> expectedResults = new ArrayList<>();
+        for(BigInteger exponent : exponents) {
+            for(Element b : new Element[] { base, gtBase }) {
+                // jpbc's own exponentiation is the reference.
+                Element expected = b.duplicate().pow(exponent.abs());
+                if(exponent.signum() < 0) expected.invert();
+                results.add(power(b, exponent));
+                expectedResults.add(expected);
+            }
+        }
+        for(int i = 0; i < results.size(); i++) {
+            Assertions.assertTrue(results.get(i).isEqual(expectedResults.get(i)));
+        }
+        Element infinity = p.G.newZeroElement().getImmutable();
+        Assertions.assertTrue(power(infinity, BigInteger.TEN).isZero());
+
+        // The fixed-base table of g can be stored and restored.
+        ElementPowPreProcessing table = p.G.getElementPowPreProcessingFromBytes(p.getGPowPreProcessing().toBytes());
+        Assertions.assertTrue(power(table, exponents[6]).isEqual(power(p.g, exponents[6])));
+    }
+
+    @Test
+    public void lowOrderPointTest() {
+        PublicParameters p = scheme.Setup(authority);
+        // The point (0, 0) is its own inverse, so its even powers are the point at infinity.
+        Element lowOrder = ThresholdSchemeTest.lowOrderPoint(p);
+        Assertions.assertTrue(power(lowOrder, BigInteger.valueOf(4)).isZero());
+        Assertions.assertTrue(power(lowOrder, BigInteger.valueOf(-3)).isEqual(lowOrder));
+        Element[] bases = new Element[] { lowOrder, p.g, lowOrder };
+        BigInteger[] exponents = new BigInteger[] { BigInteger.valueOf(3), BigInteger.valueOf(5), BigInteger.valueOf(-7) };
+        Assertions.assertTrue(Helper.multiPower(bases, exponents).isEqual(p.g.duplicate().pow(BigInteger.valueOf(5))));
+        Element[] manyBases = new Element[200];
+        BigInteger[] manyExponents = new BigInteger[200];
+        for(int i = 0; i < manyBases.length; i++) {
+            manyBases[i] = (i % 2 == 0) ? lowOrder : p.g;
+            manyExponents[i] = BigInteger.valueOf(2 * i + 1);
+        }
+        // 100 odd powers of the point of order 2, and g^(3 + 7 + ... + 399).
+        Assertions.assertTrue(Helper.multiPower(manyBases, manyExponents).isEqual(p.g.duplicate().pow(BigInteger.valueOf(20100))));
+    }
+
+    @Test
+    public void pairingPreProcessingTest() {
+        PublicParameters p = scheme.Setup(authority);
+        Verifier verifier = scheme.getVerifier();
+        Element a = p.G.newRandomElement().getImmutable();
+        Assertions.assertTrue(verifier.pairWithG(a).isEqual(scheme.pair(a, p.g)));
+        Assertions.assertTrue(verifier.preprocess(p.g2).pairing(a).isEqual(scheme.pair(p.g2, a)));
+        // The identity cache switches to a preprocessed pairing after a few pairings of the same multiplier.
+        IdentityCache.Entry entry = new IdentityCache.Entry(p.uPrime);
+        for(int i = 0; i < IdentityCache.TABLE_THRESHOLD + 1; i++) {
+            Assertions.assertTrue(entry.pair(verifier, a).isEqual(scheme.pair(p.uPrime, a)));
+        }
+    }
+
+    @Test
+    public void verifyBatchTest() {
+        scheme.Setup(authority);
+
+        String[] identities = new String[] { "00101", "11000" };
+        PrivateKey[] privateKeys = new PrivateKey[] {
+                scheme.Extract(identities[0]), scheme.Extract(identities[1])
+        };
+        // More distinct messages than message bits, so that the messages are regrouped per bit position.
+        List<SignedMessage> signedMessages = new ArrayList<>();
+        for(int i = 0; i < 12; i++) {
+            String message = String.format("%10s", Integer.toBinaryString(i * 37 + 5)).replace(' ', '0');
+            int owner = i % 2;
+            signedMessages.add(new SignedMessage(identities[owner], message, scheme.Sign(message, privateKeys[owner])));
+        }
+        boolean[] results = scheme.VerifyBatch(signedMessages);
+        for(boolean result : results) {
+            Assertions.assertTrue(result);
+        }
+
+        // Tamper with some of the tuples.
+        SignedMessage valid = signedMessages.get(3);
+        signedMessages.set(3, new SignedMessage(BitString.fromString(identities[0]), valid.getMessage(), valid.getSignature()));
+        valid = signedMessages.get(8);
+        signedMessages.set(8, new SignedMessage(valid.getIdentity(), BitString.fromString("0110011011"), valid.getSignature()));
+        valid = signedMessages.get(10);
+        signedMessages.set(10, new SignedMessage(valid.getIdentity(), BitString.fromString("011"), valid.getSignature()));
+        results = scheme.VerifyBatch(signedMessages);
+        for(int i = 0; i < results.length; i++) {
+            Assertions.assertEquals(i != 3 && i != 8 && i != 10, results[i]);
+        }
+    }
+
+    @Test
+    public void multiplierTableTest() {
+        PublicParameters p = scheme.Setup(authority);
+        MultiplierTable messageTable = new MultiplierTable(p.mPrime, p.M);
+        // Two windows of 8 and 2 bits.
+        Assertions.assertEquals(256 + 4, messageTable.getEntryCount());
+        Assertions.assertEquals((256 + 4) * p.G.getLengthInBytes(), messageTable.getEncodedSizeInBytes());
+        for(int i = 0; i < (1 << messageLength); i += 7) {
+            String message = String.format("%10s", Integer.toBinaryString(i)).replace(' ', '0');
+            Assertions.assertEquals(Scheme.calculateMultiplier(message, p.mPrime, p.M), messageTable.calculate(message));
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> messageTable.calculate("011001101"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> messageTable.calculate("01100110101"));
+
+        String identity = "00101";
+        String message = "0110011010";
+        Signature signature = scheme.Sign(message, scheme.Extract(identity));
+        scheme.setMultiplierTables(true);
+        Assertions.assertNotNull(scheme.getMultipliers().getIdentityTable());
+        Assertions.assertTrue(scheme.getVerifier().getMultipliers().hasMultiplierTables());
+        // The tables belong to the scheme, so the verifier of `VerifyGlobal` for the same parameters does not use them.
+        Assertions.assertFalse(p.getVerifier(null).getMultipliers().hasMultiplierTables());
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+        Assertions.assertTrue(scheme.Verify(identity, message, scheme.Sign(message, scheme.Extract(identity))));
+        Assertions.assertFalse(scheme.Verify(identity, "0110011011", signature));
+    }
+
+    @Test
+    public void identityCacheTest() {
+        scheme.setIdentityCacheCapacity(2);
+        PublicParameters p = scheme.Setup(authority);
+        IdentityCache cache = scheme.getMultipliers().getIdentityCache();
+        Assertions.assertNull(p.getVerifier(null).getMultipliers().getIdentityCache());
+
+        String identity = "00101";
+        String message = "0110011010";
+        PrivateKey privateKey = scheme.Extract(identity);
+        Signature signature = scheme.Sign(message, privateKey);
+        for(int i = 0; i < IdentityCache.TABLE_THRESHOLD + 1; i++) {
+            Assertions.assertTrue(scheme.Verify(identity, message, signature));
+            Assertions.assertTrue(scheme.Verify(identity, message, scheme.Sign(message, scheme.Extract(identity))));
+        }
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertTrue(cache.getHits() > 0);
+        Assertions.assertEquals(Scheme.calculateMultiplier(identity, p.uPrime, p.U),
+                scheme.getMultipliers().calculateIdentityMultiplier(BitString.fromString(identity)));
+
+        // Only the two most recently used identities are kept.
+        scheme.getMultipliers().calculateIdentityMultiplier(BitString.fromString("11111"));
+        scheme.getMultipliers().calculateIdentityMultiplier(BitString.fromString("00000"));
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertNull(cache.getIfPresent(BitString.fromString(identity)));
+    }
+
+    @Test
+    public void bitStringTest() {
+        scheme.Setup(authority);
+
+        BitString identity = BitString.fromString("00101");
+        BitString message = scheme.hashMessage("a message of any length".getBytes());
+        Assertions.assertEquals(messageLength, message.length());
+
+        PrivateKey privateKey = scheme.Extract(identity);
+        Signature signature = scheme.Sign(message, privateKey);
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+        Assertions.assertTrue(scheme.Verify(identity.toString(), message.toString(), signature));
+        Assertions.assertFalse(scheme.Verify(identity, scheme.hashMessage("another message".getBytes()), signature));
+    }
+
+    @Test
+    public void parallelSchemeTest() {
+        scheme.Setup(authority);
+
+        BitString identity = BitString.fromString("00101");
+        PrivateKey privateKey = scheme.Extract(identity);
+        List<BitString> messages = new ArrayList<>();
+        for(int i = 0; i < 8; i++) {
+            messages.add(scheme.hashMessage(new byte[] { (byte) i }));
+        }
+        try(ParallelScheme parallelScheme = new ParallelScheme(scheme.getVerifier())) {
+            List<Signature> signatures = parallelScheme.signAll(messages, privateKey);
+            List<SignedMessage> signedMessages = new ArrayList<>();
+            for(int i = 0; i < messages.size(); i++) {
+                // Pair every second message with the signature of another message.
+                int signature = (i % 2 == 0) ? i : (i + 1) % messages.size();
+                signedMessages.add(new SignedMessage(identity, messages.get(i), signatures.get(signature)));
+            }
+            boolean[] results = parallelScheme.verifyAll(signedMessages);
+            for(int i = 0; i < results.length; i++) {
+                Assertions.assertEquals(i % 2 == 0, results[i]);
+            }
+            Assertions.assertTrue(parallelScheme.verify(identity, messages.get(0),
+                    parallelScheme.sign(messages.get(0), privateKey).join()).join());
+        }
+    }
+
+    @Test
+    public void metricsTest() {
+        scheme.Setup(authority);
+        String identity = "00101";
+        String message = "0110011010";
+        PrivateKey privateKey = scheme.Extract(identity);
+
+        InMemoryMetrics metrics = new InMemoryMetrics();
+        Instrumentation.setMetrics(metrics);
+        try {
+            Signature signature = scheme.Sign(message, privateKey);
+            Assertions.assertTrue(scheme.Verify(identity, message, signature));
+        } finally {
+            Instrumentation.setMetrics(null);
+        }
+        Assertions.assertSame(Metrics.NOOP, Instrumentation.getMetrics());
+        Assertions.assertEquals(1, metrics.getLatency(Metrics.Operation.SIGN).getCount());
+        Assertions.assertEquals(1, metrics.getLatency(Metrics.Operation.VERIFY).getCount());
+        Assertions.assertEquals(0, metrics.getLatency(Metrics.Operation.EXTRACT).getCount());
+        Assertions.assertTrue(metrics.getLatency(Metrics.Operation.VERIFY).getMaxNanos() > 0);
+        // The verification takes three pairings, and the signing none.
+        Assertions.assertEquals(3, metrics.getCount(Metrics.Counter.PAIRING));
+        Assertions.assertEquals(1, metrics.getCount(Metrics.Counter.FIXED_BASE_POWER));
+        Assertions.assertTrue(metrics.getCount(Metrics.Counter.MULTIPLIER_MULTIPLICATION) > 0);
+
+        // Nothing is reported once the metrics are reset.
+        scheme.Sign(message, privateKey);
+        Assertions.assertEquals(1, metrics.getLatency(Metrics.Operation.SIGN).getCount());
+    }
+
+    @Test
+    public void latencyHistogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        Assertions.assertEquals(1000, histogram.getCount());
+        Assertions.assertEquals(1000000, histogram.getMaxNanos());
+        // The buckets are accurate to 1/SUB_BUCKETS of their value.
+        double tolerance = 1.0 / LatencyHistogram.SUB_BUCKETS;
+        Assertions.assertEquals(500000, histogram.getPercentileNanos(50), 500000 * tolerance);
+        Assertions.assertEquals(990000, histogram.getPercentileNanos(99), 990000 * tolerance);
+        Assertions.assertEquals(500500, histogram.getMeanNanos(), 1e-6);
+    }
 }
@@ -1,6 +1,9 @@
 package gcrypto;
 
 import gcrypto.threshold.DistributedKeys;
+import gcrypto.threshold.ServerSigner;
+import gcrypto.threshold.ShareAggregator;
+import gcrypto.threshold.ShareCombiner;
 import gcrypto.threshold.SignatureShare;
 import gcrypto.threshold.ThresholdScheme;
 import it.unisa.dia.gas.jpbc.Element;
@@ -9,6 +12,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
 
 import static gcrypto.Helper.power;
 
@@ -28,6 +33,15 @@ public class ThresholdSchemeTest {
         scheme.Setup(authority);
     }
 
+    /**
+     * @return the point (0, 0) of the curve, which is of order 2 and so not in the group of order r.
+     */
+    static Element lowOrderPoint(PublicParameters publicParameters) {
+        Element point = publicParameters.G.newElement();
+        point.setFromBytes(new byte[publicParameters.G.getLengthInBytes()]);
+        return point.getImmutable();
+    }
+
     @Test
     public void keyDisTest() {
         String identity = "00101";
@@ -61,6 +75,12 @@ public class ThresholdSchemeTest {
         // Make sure that this is the case.
         Assertions.assertEquals(privateKey.getFirst(), reconstructedFirstPart);
         Assertions.assertEquals(privateKey.getSecond(), reconstructedSecondPart);
+
+        // Every verification key must be e(identityMultiplier, g)^f(k).
+        Element identityPairing = scheme.pair(ThresholdScheme.calculateIdentityMultiplier(identity, scheme.publicParameters), scheme.publicParameters.g);
+        for(int server = 1; server <= servers; server++) {
+            Assertions.assertEquals(power(identityPairing, distKeys.getPrivateKey(server)), distKeys.getVerificationKey(server));
+        }
     }
 
     @Test
@@ -139,4 +159,206 @@ public class ThresholdSchemeTest {
         Assertions.assertFalse(scheme.Verify(identity, falseMessage, reconstructedSignature));
         Assertions.assertFalse(scheme.Verify(falseIdentity, falseMessage, reconstructedSignature));
     }
+
+    @Test
+    public void productPairingReconstructTest() {
+        String identity = "00101";
+        String message = "1010011001";
+
+        scheme.setProductPairing(true);
+        PrivateKey privateKey = scheme.Extract(identity);
+        DistributedKeys distKeys = scheme.KeyDis(privateKey, servers, threshold, identity);
+        int[] indexes = new int[] { 4, 9, 2 };
+        SignatureShare[] signatureShares = new SignatureShare[indexes.length];
+        for(int i = 0; i < indexes.length; i++) {
+            BigInteger keyShare = distKeys.getPrivateKey(indexes[i]);
+            signatureShares[i] = ThresholdScheme.ThrSigIndividual(message, identity, keyShare, scheme.publicParameters);
+        }
+        Signature reconstructedSignature = ThresholdScheme.Reconstruct(indexes, signatureShares, distKeys.getY(), scheme.publicParameters);
+        Assertions.assertTrue(scheme.Verify(identity, message, reconstructedSignature));
+        Assertions.assertFalse(scheme.Verify(identity, "1010011000", reconstructedSignature));
+    }
+
+    @Test
+    public void verifySharesTest() {
+        String identity = "00101";
+        String message = "1010011001";
+
+        PrivateKey privateKey = scheme.Extract(identity);
+        DistributedKeys distKeys = scheme.KeyDis(privateKey, servers, threshold, identity);
+        int[] indexes = new int[servers];
+        SignatureShare[] signatureShares = new SignatureShare[servers];
+        for(int server = 1; server <= servers; server++) {
+            indexes[server-1] = server;
+            signatureShares[server-1] = ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(server), scheme.publicParameters);
+        }
+        for(boolean valid : scheme.verifyShares(indexes, signatureShares, message, distKeys)) {
+            Assertions.assertTrue(valid);
+        }
+        // Corrupt a few servers: a share for another message, a share of another server and a missing share.
+        signatureShares[1] = ThresholdScheme.ThrSigIndividual("1010011000", identity, distKeys.getPrivateKey(2), scheme.publicParameters);
+        signatureShares[4] = signatureShares[5];
+        signatureShares[8] = null;
+        // And a share that the pairing cannot even evaluate.
+        signatureShares[6] = new SignatureShare(signatureShares[6].getR_k(), lowOrderPoint(scheme.publicParameters),
+                signatureShares[6].getSecond());
+        boolean[] results = scheme.verifyShares(indexes, signatureShares, message, distKeys);
+        for(int server = 1; server <= servers; server++) {
+            boolean faulty = server == 2 || server == 5 || server == 7 || server == 9;
+            Assertions.assertEquals(!faulty, results[server-1]);
+            Assertions.assertEquals(!faulty, scheme.verifyShare(server, signatureShares[server-1], message, distKeys));
+        }
+        // The faulty shares are skipped.
+        Signature reconstructedSignature = scheme.ReconstructValid(indexes, signatureShares, threshold, message, distKeys);
+        Assertions.assertTrue(scheme.Verify(identity, message, reconstructedSignature));
+        // Not enough valid shares.
+        int[] fewIndexes = new int[] { 2, 5, 9, 7, 1, 3 };
+        SignatureShare[] fewShares = new SignatureShare[] {
+                signatureShares[1], signatureShares[4], signatureShares[8], signatureShares[6], signatureShares[0], signatureShares[2]
+        };
+        Assertions.assertNull(scheme.ReconstructValid(fewIndexes, fewShares, threshold, message, distKeys));
+        // A server without a verification key is a mistake of the caller, not an invalid share.
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> scheme.verifyShare(servers + 1, signatureShares[0], message, distKeys));
+        int[] unknownIndexes = new int[] { 1, 0 };
+        SignatureShare[] unknownShares = new SignatureShare[] { signatureShares[0], signatureShares[2] };
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> scheme.verifyShares(unknownIndexes, unknownShares, message, distKeys));
+    }
+
+    @Test
+    public void shareAggregatorTest() {
+        BitString identity = BitString.fromString("00101");
+        BitString message = BitString.fromString("1010011001");
+
+        PrivateKey privateKey = scheme.Extract(identity);
+        DistributedKeys distKeys = scheme.KeyDis(privateKey, servers, threshold, identity);
+        ShareAggregator aggregator = new ShareAggregator(message, threshold, distKeys, scheme.getShareVerifier());
+        // An invalid share, a duplicate share and a valid share do not complete the signature.
+        Assertions.assertNull(aggregator.add(7, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(6), scheme.publicParameters)));
+        SignatureShare share = ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(4), scheme.publicParameters);
+        Assertions.assertNull(aggregator.add(4, share));
+        Assertions.assertNull(aggregator.add(4, share));
+        Assertions.assertNull(aggregator.add(9, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(9), scheme.publicParameters)));
+        // A share that cannot be checked is rejected as well.
+        SignatureShare lowOrderShare = ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(3), scheme.publicParameters);
+        lowOrderShare = new SignatureShare(lowOrderShare.getR_k(), lowOrderPoint(scheme.publicParameters), lowOrderShare.getSecond());
+        Assertions.assertNull(aggregator.add(3, lowOrderShare));
+        Assertions.assertEquals(2, aggregator.getShareCount());
+        Assertions.assertEquals(2, aggregator.getRejectedCount());
+        // The third valid share completes it.
+        Signature signature = aggregator.add(1, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(1), scheme.publicParameters));
+        Assertions.assertTrue(aggregator.isComplete());
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+        Assertions.assertNull(aggregator.add(2, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(2), scheme.publicParameters)));
+        Assertions.assertSame(signature, aggregator.getSignature());
+
+        // Without a verifier, a share with a point of order 2 is accepted, and the reconstructed signature is invalid.
+        ShareAggregator unchecked = new ShareAggregator(message, threshold, distKeys, scheme.publicParameters);
+        for(int server = 1; server < threshold; server++) {
+            Assertions.assertNull(unchecked.add(server, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(server), scheme.publicParameters)));
+        }
+        Signature invalid = unchecked.add(threshold, new SignatureShare(share.getR_k(), lowOrderPoint(scheme.publicParameters), share.getSecond()));
+        Assertions.assertNotNull(invalid);
+        Assertions.assertFalse(scheme.Verify(identity, message, invalid));
+
+        // Checked as a batch, a faulty share that arrives first is evicted instead of the one that completes the quorum.
+        ShareAggregator batched = new ShareAggregator(message, threshold, distKeys, scheme.getShareVerifier(), false);
+        Assertions.assertNull(batched.add(2, new SignatureShare(share.getR_k(), lowOrderPoint(scheme.publicParameters), share.getSecond())));
+        Assertions.assertNull(batched.add(5, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(6), scheme.publicParameters)));
+        for(int server = 6; server < threshold + 4; server++) {
+            Assertions.assertNull(batched.add(server, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(server), scheme.publicParameters)));
+        }
+        Assertions.assertEquals(threshold - 2, batched.getShareCount());
+        Assertions.assertEquals(2, batched.getRejectedCount());
+        // The evicted servers can send their shares again.
+        Assertions.assertNull(batched.add(2, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(2), scheme.publicParameters)));
+        Signature batchedSignature = batched.add(5, ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(5), scheme.publicParameters));
+        Assertions.assertTrue(scheme.Verify(identity, message, batchedSignature));
+    }
+
+    @Test
+    public void shareCombinerTest() throws Exception {
+        BitString identity = BitString.fromString("00101");
+        PrivateKey privateKey = scheme.Extract(identity);
+        DistributedKeys distKeys = scheme.KeyDis(privateKey, servers, threshold, identity);
+        ShareCombiner combiner = new ShareCombiner(scheme.publicParameters, threshold, 2, id -> distKeys);
+        BitString[] messages = new BitString[] {
+                BitString.fromString("1010011001"), BitString.fromString("0110011001"), BitString.fromString("1110011001")
+        };
+        // Interleave the shares of the first two requests from two threads.
+        Signature[] signatures = new Signature[2];
+        Thread[] threads = new Thread[2];
+        for(int t = 0; t < 2; t++) {
+            int request = t;
+            threads[t] = new Thread(() -> {
+                for(int server = 1; server <= threshold; server++) {
+                    SignatureShare share = ThresholdScheme.ThrSigIndividual(messages[request], identity,
+                            distKeys.getPrivateKey(server), scheme.publicParameters);
+                    Signature signature = combiner.add(identity, messages[request], server, share);
+                    if(signature != null) signatures[request] = signature;
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertTrue(scheme.Verify(identity, messages[0], signatures[0]));
+        Assertions.assertTrue(scheme.Verify(identity, messages[1], signatures[1]));
+        // A third request evicts the least recently used one.
+        combiner.add(identity, messages[2], 1, ThresholdScheme.ThrSigIndividual(messages[2], identity, distKeys.getPrivateKey(1), scheme.publicParameters));
+        Assertions.assertEquals(2, combiner.size());
+        Assertions.assertEquals(1, combiner.getEvictions());
+
+        // The shares of an unknown identity are rejected, and the combiner keeps accepting the others.
+        BitString unknown = BitString.fromString("11111");
+        ShareCombiner verifyingCombiner = new ShareCombiner(scheme.getShareVerifier(), threshold, 2,
+                id -> id.equals(identity) ? distKeys : null);
+        Assertions.assertNull(verifyingCombiner.add(unknown, messages[0], 1, ThresholdScheme.ThrSigIndividual(messages[0], identity, distKeys.getPrivateKey(1), scheme.publicParameters)));
+        Assertions.assertEquals(0, verifyingCombiner.size());
+        SignatureShare lowOrderShare = ThresholdScheme.ThrSigIndividual(messages[0], identity, distKeys.getPrivateKey(1), scheme.publicParameters);
+        Assertions.assertNull(verifyingCombiner.add(identity, messages[0], 1,
+                new SignatureShare(lowOrderShare.getR_k(), lowOrderPoint(scheme.publicParameters), lowOrderShare.getSecond())));
+        Signature signature = null;
+        for(int server = 2; server <= threshold + 1; server++) {
+            signature = verifyingCombiner.add(identity, messages[0], server, ThresholdScheme.ThrSigIndividual(messages[0], identity,
+                    distKeys.getPrivateKey(server), scheme.publicParameters));
+        }
+        Assertions.assertTrue(scheme.Verify(identity, messages[0], signature));
+        Assertions.assertEquals(1, verifyingCombiner.getAggregator(identity, messages[0]).getRejectedCount());
+    }
+
+    @Test
+    public void serverSignerTest() {
+        BitString identity = BitString.fromString("00101");
+        BitString message = BitString.fromString("1010011001");
+
+        PrivateKey privateKey = scheme.Extract(identity);
+        DistributedKeys distKeys = scheme.KeyDis(privateKey, servers, threshold, identity);
+        int[] indexes = new int[] { 8, 3, 6 };
+        SignatureShare[] signatureShares = new SignatureShare[indexes.length];
+        for(int i = 0; i < indexes.length; i++) {
+            ServerSigner signer = new ServerSigner(indexes[i], identity, distKeys, scheme.publicParameters, i == 0);
+            // Same message twice, and another one.
+            List<SignatureShare> shares = signer.signAll(Arrays.asList(message, BitString.fromString("0000011111"), message));
+            Assertions.assertEquals(3, shares.size());
+            Assertions.assertNotEquals(shares.get(0).getR_k(), shares.get(2).getR_k());
+            for(SignatureShare share : shares) {
+                Assertions.assertTrue(scheme.verifyShare(indexes[i], share, (share == shares.get(1)) ? BitString.fromString("0000011111") : message, distKeys));
+            }
+            signatureShares[i] = signer.sign(message);
+        }
+        Signature signature = ThresholdScheme.Reconstruct(indexes, signatureShares, distKeys.getY(), scheme.publicParameters);
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+
+        // The same with nonces from a pool.
+        try(NoncePool pool = new NoncePool(scheme.publicParameters, 2, 1)) {
+            signatureShares[0] = ThresholdScheme.ThrSigIndividual(message, identity, distKeys.getPrivateKey(indexes[0]), scheme.publicParameters, pool);
+            signatureShares[1] = new ServerSigner(indexes[1], identity, distKeys, scheme.publicParameters).sign(message, pool);
+            signatureShares[2] = new ServerSigner(indexes[2], identity, distKeys, scheme.publicParameters).signAll(Arrays.asList(message), pool).get(0);
+        }
+        signature = ThresholdScheme.Reconstruct(indexes, signatureShares, distKeys.getY(), scheme.publicParameters);
+        Assertions.assertTrue(scheme.Verify(identity, message, signature));
+    }
 }